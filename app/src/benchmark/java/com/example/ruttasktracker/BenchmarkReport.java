@@ -0,0 +1,64 @@
+package com.example.ruttasktracker;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Результаты замеров в JSON, чтобы сравнивать их между версиями:
+// {"timestamp": ..., "results": [{"name": "addTasks", "size": 1000, "meanMs": ..., ...}]}
+class BenchmarkReport {
+    private final JSONObject root = new JSONObject();
+    private final JSONArray results = new JSONArray();
+
+    BenchmarkReport(int warmupIterations, int measuredIterations) throws JSONException {
+        root.put("timestamp", System.currentTimeMillis());
+        root.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        root.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        root.put("warmupIterations", warmupIterations);
+        root.put("measuredIterations", measuredIterations);
+        root.put("results", results);
+    }
+
+    // nanos - длительность каждой измеренной итерации; size - сколько задач обработано за итерацию
+    // Возвращает запись результата, чтобы к ней можно было добавить свои поля
+    JSONObject add(String name, int size, long[] nanos) throws JSONException {
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long value : nanos) {
+            total += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double mean = (double) total / nanos.length;
+
+        JSONObject result = new JSONObject();
+        result.put("name", name);
+        result.put("size", size);
+        result.put("iterations", nanos.length);
+        result.put("meanMs", mean / 1e6);
+        result.put("minMs", min / 1e6);
+        result.put("maxMs", max / 1e6);
+        result.put("nsPerTask", mean / size);
+        results.put(result);
+        return result;
+    }
+
+    void writeTo(File file) throws IOException, JSONException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Не удалось создать " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(root.toString(2));
+            writer.write('\n');
+        }
+    }
+}
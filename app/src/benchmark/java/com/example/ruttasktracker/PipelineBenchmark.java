@@ -0,0 +1,268 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Замеры слоя данных и списка на 1k, 10k и 100k задач. Запускается отдельно от тестов:
+ * ./gradlew :app:benchmark, результат пишется в JSON по пути из свойства benchmark.output.
+ * Вместо сортировки в loadTasks и опроса checkTaskStatus замеряются их нынешние замены:
+ * getTasksOrdered, completeOverdueTasks и куча сроков DeadlineScheduler. Прежняя
+ * сортировка (legacySort) замеряется рядом с getTasksOrdered для сравнения.
+ * connection.* - insert, query и update по одной задаче с открытием соединения
+ * на каждый вызов (как было раньше) и с одним долгоживущим соединением.
+ * Выгрузка и загрузка замеряются на миллионе задач вместе с пиковым размером кучи.
+ * Холодный старт (coldStart.*) - время до первого экрана списка от закрытой базы:
+ * через кэш, который сначала читает всю таблицу, через страницу из базы и из снимка.
+ * На устройстве то же время до первой отрисовки пишет StartupTrace.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PipelineBenchmark {
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final long MINUTE = 60_000L;
+    private static final int BACKUP_SIZE = 1_000_000;
+    private static final int FILL_BATCH_SIZE = 10_000;
+    private static final int CONNECTION_OPERATIONS = 500;
+    private static final long HOUR = 3_600_000L;
+
+    private DatabaseHelper dbHelper;
+    private BenchmarkReport report;
+    // Заполняется в подготовке замера deleteTasks, чтобы чтение id не попало в замер
+    private long[] idsToDelete;
+
+    @Before
+    public void setUp() throws Exception {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+        report = new BenchmarkReport(WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void run() throws Exception {
+        for (int size : SIZES) {
+            long now = System.currentTimeMillis();
+            List<Task> tasks = createTasks(size, now);
+
+            measure("addTasks", size, this::clearTasks, () -> dbHelper.addTasks(tasks));
+            long[] ids = storedIds();
+
+            measure("getAllTasks", size, null, dbHelper::getAllTasks);
+            measure("getTasksOrdered", size, null, () -> dbHelper.getTasksOrdered(now));
+            measure("legacySort", size, null, () -> LegacyTaskOrder.sort(tasks, now));
+            measure("coldStart.cache", size, this::reopenDatabase,
+                    () -> new TaskCache(dbHelper).getTasksAfter(now, null, true, TaskPager.FIRST_PAGE_SIZE));
+            measure("coldStart.database", size, this::reopenDatabase,
+                    () -> dbHelper.getTasksAfter(now, null, true, TaskPager.FIRST_PAGE_SIZE));
+            File snapshotFile = File.createTempFile("first_screen", ".bin");
+            FirstScreenSnapshot snapshot = new FirstScreenSnapshot(snapshotFile);
+            snapshot.write(dbHelper.getTasksAfter(now, null, true, FirstScreenSnapshot.SIZE));
+            measure("coldStart.snapshot", size, null, snapshot::read);
+            snapshotFile.delete();
+            measure("updateCompleted", size, null, () -> dbHelper.updateCompleted(ids, true));
+            measure("completeOverdueTasks", size,
+                    () -> dbHelper.updateCompleted(ids, false),
+                    () -> dbHelper.completeOverdueTasks(now));
+            measure("deadlineHeap", size, null, () -> pushAndPopDeadlines(tasks));
+            measure("dueDateFormatAndParse", size, null, () -> formatAndParse(tasks));
+            measure("deleteTasks", size,
+                    () -> {
+                        clearTasks();
+                        dbHelper.addTasks(tasks);
+                        idsToDelete = storedIds();
+                    },
+                    () -> dbHelper.deleteTasks(idsToDelete));
+        }
+
+        measure("connection.reopen", CONNECTION_OPERATIONS, this::clearTasks,
+                () -> runConnectionOperations(true));
+        measure("connection.shared", CONNECTION_OPERATIONS, this::clearTasks,
+                () -> runConnectionOperations(false));
+
+        for (TaskBackup.Format format : TaskBackup.Format.values()) {
+            measureBackupRoundTrip(format);
+        }
+
+        File output = new File(System.getProperty("benchmark.output", "build/benchmark/results.json"));
+        report.writeTo(output);
+        System.out.println("Результаты: " + output.getAbsolutePath());
+    }
+
+    private void measure(String name, int size, Step setup, Step action) throws Exception {
+        long[] nanos = new long[MEASURED_ITERATIONS];
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            if (setup != null) {
+                setup.run();
+            }
+            long start = System.nanoTime();
+            action.run();
+            long elapsed = System.nanoTime() - start;
+            if (i >= WARMUP_ITERATIONS) {
+                nanos[i - WARMUP_ITERATIONS] = elapsed;
+            }
+        }
+        report.add(name, size, nanos);
+        System.out.printf(Locale.US, "%-22s %,8d задач: %.2f ms%n", name, size, mean(nanos) / 1e6);
+    }
+
+    // Одна итерация: на миллионе задач прогрев ничего не меняет
+    private void measureBackupRoundTrip(TaskBackup.Format format) throws Exception {
+        clearTasks();
+        long now = System.currentTimeMillis();
+        for (int from = 0; from < BACKUP_SIZE; from += FILL_BATCH_SIZE) {
+            dbHelper.addTasks(createTasks(FILL_BATCH_SIZE, now));
+        }
+        String formatName = format.name().toLowerCase(Locale.US);
+        File file = File.createTempFile("tasks", "." + formatName);
+        try {
+            resetPeakHeap();
+            long start = System.nanoTime();
+            try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+                TaskBackup.exportTasks(dbHelper, channel, format);
+            }
+            reportBackup("backupExport." + formatName, System.nanoTime() - start, file.length());
+
+            clearTasks();
+            resetPeakHeap();
+            start = System.nanoTime();
+            long imported;
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                imported = TaskBackup.importTasks(dbHelper, channel, format);
+            }
+            reportBackup("backupImport." + formatName, System.nanoTime() - start, file.length());
+            if (imported != BACKUP_SIZE) {
+                throw new AssertionError("загружено " + imported + " задач из " + BACKUP_SIZE);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void reportBackup(String name, long nanos, long fileBytes) throws Exception {
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        JSONObject result = report.add(name, BACKUP_SIZE, new long[]{nanos});
+        result.put("fileBytes", fileBytes);
+        result.put("peakHeapMb", peakHeapBytes / (1024.0 * 1024.0));
+        System.out.printf(Locale.US, "%-22s %,8d задач: %.2f ms, файл %,d байт, пик кучи %.1f MB%n",
+                name, BACKUP_SIZE, nanos / 1e6, fileBytes, peakHeapBytes / (1024.0 * 1024.0));
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    private static double mean(long[] values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return (double) total / values.length;
+    }
+
+    // Следующее обращение откроет базу заново, как при запуске процесса
+    private void reopenDatabase() {
+        dbHelper.close();
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    // insert + query + update по одной задаче. С reopenEachCall соединение закрывается
+    // после каждого вызова, как было до общего соединения
+    private void runConnectionOperations(boolean reopenEachCall) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < CONNECTION_OPERATIONS; i++) {
+            dbHelper.addTask(new Task("Задача " + i, "Описание", now + i * HOUR, false));
+            closeIf(reopenEachCall);
+
+            List<Task> tasks = dbHelper.getTasksOrdered(now);
+            closeIf(reopenEachCall);
+
+            Task first = tasks.get(0);
+            first.setCompleted(!first.isCompleted());
+            dbHelper.updateTask(first);
+            closeIf(reopenEachCall);
+        }
+    }
+
+    // Закрытие хелпера закрывает соединение, следующий вызов откроет его заново
+    private void closeIf(boolean close) {
+        if (close) {
+            dbHelper.close();
+        }
+    }
+
+    private void clearTasks() {
+        dbHelper.getWritableDatabase().delete("tasks", null, null);
+    }
+
+    private long[] storedIds() {
+        List<Task> stored = dbHelper.getAllTasks();
+        long[] ids = new long[stored.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = stored.get(i).getId();
+        }
+        return ids;
+    }
+
+    private static void pushAndPopDeadlines(List<Task> tasks) {
+        DeadlineHeap heap = new DeadlineHeap();
+        for (int i = 0; i < tasks.size(); i++) {
+            heap.push(i, tasks.get(i).getDueDate());
+        }
+        while (!heap.isEmpty()) {
+            heap.pop();
+        }
+    }
+
+    private static void formatAndParse(List<Task> tasks) throws Exception {
+        for (Task task : tasks) {
+            DueDateFormat.parse(DueDateFormat.format(task.getDueDate()));
+        }
+    }
+
+    // Сроки разбросаны на неделю в обе стороны от now, четверть задач выполнена
+    private static List<Task> createTasks(int size, long now) {
+        Random random = new Random(42);
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long dueDate = now + (random.nextInt(20_000) - 10_000) * MINUTE;
+            tasks.add(new Task("Задача " + i, "Описание задачи " + i, dueDate, random.nextInt(4) == 0));
+        }
+        return tasks;
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Раз в сутки переносит старые задачи в архив и сжимает файл базы. Запускается,
+// только когда устройство простаивает и заряда достаточно: VACUUM переписывает весь файл
+public class ArchiveWorker extends Worker {
+    private static final String WORK_NAME = "task_archive";
+    private static final String TAG = "ArchiveWorker";
+    private static final long INTERVAL_HOURS = 24;
+
+    public ArchiveWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        try {
+            TaskRepository.getInstance(getApplicationContext()).archiveOldTasks().get();
+            return Result.success();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        } catch (ExecutionException e) {
+            // Пачки переносятся отдельными транзакциями, поэтому повтор продолжит
+            // с того места, где архивирование прервалось
+            if (DeadlineWorker.isTransient(e.getCause())) {
+                Log.w(TAG, "Архивирование будет повторено", e.getCause());
+                return Result.retry();
+            }
+            // Ошибку в данных повтор не исправит; следующая попытка будет по расписанию
+            Log.e(TAG, "Архивирование не выполнено", e.getCause());
+            return Result.failure();
+        }
+    }
+
+    // Повторный вызов не сбрасывает уже запланированное задание
+    static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(ArchiveWorker.class,
+                INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.ruttasktracker;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+// После перезагрузки закрывает задачи, истекшие пока устройство было выключено,
+// и заново ставит проверку на ближайший срок
+public class BootReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            DeadlineWorker.runNow(context);
+        }
+    }
+}
@@ -3,15 +3,41 @@ package com.example.ruttasktracker;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
+import java.io.IOException;
+import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class DatabaseHelper extends SQLiteOpenHelper implements TaskSource {
+    private static final String TAG = "DatabaseHelper";
 
-public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "tasks.db";
-    private static final int DATABASE_VERSION = 2;
+    // v3: due_date хранится как INTEGER (epoch millis) вместо строки "dd.MM.yyyy HH:mm"
+    // v4: составной индекс (completed, due_date) для упорядоченной выборки
+    // v5: полнотекстовый индекс tasks_fts по названию и описанию
+    // v6: архив archived_tasks для давно просроченных и выполненных задач
+    // v7: sync_id, журнал изменений task_changes и состояние синхронизации sync_state
+    // v8: правило повторения recurrence и выполненные повторения task_occurrences
+    // v9: счетчики задач task_counts по интервалам сроков для сводки
+    // v10: sync_id в archived_tasks, чтобы синхронизация не возвращала задачи из архива
+    private static final int DATABASE_VERSION = 10;
+
+    // Настройки соединения. Размер кэша страниц задается в KiB (отрицательное значение
+    // для PRAGMA cache_size). В режиме WAL synchronous = NORMAL не портит базу при сбое,
+    // но последние транзакции перед отключением питания могут откатиться
+    static final int CACHE_SIZE_KB = 4096;
+    static final String SYNCHRONOUS_MODE = "NORMAL";
 
     private static final String TABLE_TASKS = "tasks";
     private static final String COLUMN_ID = "id";
@@ -19,85 +45,1468 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_DESCRIPTION = "description";
     private static final String COLUMN_DUE_DATE = "due_date";
     private static final String COLUMN_COMPLETED = "completed";
+    private static final String COLUMN_RECURRENCE = "recurrence";
+
+    private static final String INDEX_DUE_DATE = "idx_tasks_due_date";
+    private static final String INDEX_STATUS_DUE_DATE = "idx_tasks_completed_due_date";
+
+    // FTS4 с внешним содержимым: текст хранится только в tasks, а индекс
+    // поддерживается триггерами
+    private static final String TABLE_TASKS_FTS = "tasks_fts";
+
+    // Задачи, перенесенные из tasks политикой хранения. id сохраняется: AUTOINCREMENT
+    // не выдает его повторно
+    private static final String TABLE_ARCHIVED_TASKS = "archived_tasks";
+    private static final String COLUMN_ARCHIVED_AT = "archived_at";
+    private static final String INDEX_ARCHIVED_DUE_DATE = "idx_archived_tasks_due_date";
+    private static final String INDEX_ARCHIVED_SYNC_ID = "idx_archived_tasks_sync_id";
+    // Архив листается от новых сроков к старым
+    private static final String WHERE_OLDER_THAN_KEY = COLUMN_DUE_DATE + " <= ? AND (" +
+            COLUMN_DUE_DATE + " < ? OR " + COLUMN_ID + " < ?)";
+    private static final String WHERE_NOT_NEWER_THAN_KEY = COLUMN_DUE_DATE + " <= ? AND (" +
+            COLUMN_DUE_DATE + " < ? OR " + COLUMN_ID + " <= ?)";
+    private static final String WHERE_NEWER_THAN_KEY = COLUMN_DUE_DATE + " >= ? AND (" +
+            COLUMN_DUE_DATE + " > ? OR " + COLUMN_ID + " > ?)";
+
+    // Синхронизация: глобальный id задачи, журнал локальных изменений для отправки на сервер
+    // и состояние синхронизации одной строкой. Журнал ведут триггеры, пока синхронизация
+    // включена (enabled) и запись не идет от самой синхронизации или архива (suppressed)
+    private static final String COLUMN_SYNC_ID = "sync_id";
+    private static final String INDEX_SYNC_ID = "idx_tasks_sync_id";
+    private static final String TABLE_TASK_CHANGES = "task_changes";
+    private static final String INDEX_TASK_CHANGES_SYNC_ID = "idx_task_changes_sync_id";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    // 128 случайных бит в hex
+    private static final String NEW_SYNC_ID = "lower(hex(randomblob(16)))";
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    private static final String WHEN_LOGGING = "(SELECT enabled AND NOT suppressed FROM " + TABLE_SYNC_STATE + ")";
+
+    // Повторяющаяся задача - одна строка tasks с правилом и сроком текущего повторения.
+    // Остальные повторения вычисляются по правилу; строкой (task_id, due_date) хранится
+    // только повторение, отмеченное выполненным
+    private static final String TABLE_TASK_OCCURRENCES = "task_occurrences";
+    private static final String COLUMN_TASK_ID = "task_id";
+
+    // Сводка: число активных (не выполненных) и выполненных задач по 15-минутным интервалам
+    // срока. Смещения всех часовых поясов кратны 15 минутам, поэтому локальная полночь
+    // всегда приходится на границу интервала, и "сегодня" или "эта неделя" складываются
+    // из целых интервалов при любом поясе. Счетчики ведут триггеры на tasks
+    private static final String TABLE_TASK_COUNTS = "task_counts";
+    static final long COUNT_BUCKET_MS = 15 * 60_000L;
+    private static final String COLUMN_BUCKET = "bucket";
+    private static final String COLUMN_ACTIVE = "active";
+
+    // PRAGMA auto_vacuum: 2 - INCREMENTAL
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // SQLite на старых Android принимает не больше 999 параметров в запросе
+    private static final int MAX_QUERY_ARGS = 500;
+
+    // Столбцы схемы v2, из которых читает migrateDueDateToMillis
+    private static final String LEGACY_TASK_COLUMNS = COLUMN_ID + ", " + COLUMN_TITLE + ", " +
+            COLUMN_DESCRIPTION + ", " + COLUMN_DUE_DATE + ", " + COLUMN_COMPLETED;
+    private static final String TASK_COLUMNS = LEGACY_TASK_COLUMNS + ", " + COLUMN_RECURRENCE;
+
+    // Актуальная задача: не выполнена и срок еще не наступил
+    private static final String WHERE_ACTIVE = COLUMN_COMPLETED + " = 0 AND " + COLUMN_DUE_DATE + " >= ?";
+    private static final String WHERE_NOT_ACTIVE = COLUMN_COMPLETED + " != 0 OR " + COLUMN_DUE_DATE + " < ?";
+    private static final String ORDER_BY_DUE_DATE = " ORDER BY " + COLUMN_DUE_DATE + ", " + COLUMN_ID;
+    private static final String ORDER_BY_DUE_DATE_DESC = " ORDER BY " + COLUMN_DUE_DATE + " DESC, " + COLUMN_ID + " DESC";
+
+    // Позиция внутри группы по ключу (срок, id). Первое условие задает диапазон по индексу
+    private static final String AND_AFTER_KEY = " AND " + COLUMN_DUE_DATE + " >= ? AND (" +
+            COLUMN_DUE_DATE + " > ? OR " + COLUMN_ID + " > ?)";
+    private static final String AND_FROM_KEY = " AND " + COLUMN_DUE_DATE + " >= ? AND (" +
+            COLUMN_DUE_DATE + " > ? OR " + COLUMN_ID + " >= ?)";
+    private static final String AND_BEFORE_KEY = " AND " + COLUMN_DUE_DATE + " <= ? AND (" +
+            COLUMN_DUE_DATE + " < ? OR " + COLUMN_ID + " < ?)";
+
+    private static DatabaseHelper instance;
+
+    // Растет при каждом создании или изменении схемы. По нему TaskCache понимает,
+    // что загруженные в память задачи устарели
+    private volatile int schemaVersion;
+
+    // Отдельная блокировка для записей: SQLiteOpenHelper синхронизирует getReadableDatabase
+    // по this, и длинная пачка записей не должна задерживать читателей
+    private final Object writeLock = new Object();
+    private WriteStatements writeStatements;
 
-    public DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    // Одно соединение на весь процесс: кэш страниц и скомпилированные запросы
+    // живут вместе с ним, а не пересоздаются на каждой операции
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Для тестов, которым нужна отдельная база; приложение использует getInstance
+    DatabaseHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    // Для тестов синхронизации, где у каждого устройства своя база
+    DatabaseHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // В режиме WAL чтения из TaskRepository не ждут завершения записи
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // PRAGMA применяются к основному соединению, через которое идут записи
+        db.execSQL("PRAGMA synchronous = " + SYNCHRONOUS_MODE);
+        db.execSQL("PRAGMA cache_size = " + (-CACHE_SIZE_KB));
+        // Действует на новую базу; существующую переводит compact через VACUUM
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
+        schemaVersion++;
+        createTasksTable(db);
+        createIndexes(db);
+        createSearchIndex(db);
+        createArchiveTable(db);
+        createSyncTables(db);
+        createRecurrence(db);
+        createTaskCounts(db);
+        createArchiveSyncId(db);
+    }
+
+    private void createTasksTable(SQLiteDatabase db) {
         String CREATE_TASKS_TABLE = "CREATE TABLE " + TABLE_TASKS + " (" +
                 COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_TITLE + " TEXT, " +
                 COLUMN_DESCRIPTION + " TEXT, " +
-                COLUMN_DUE_DATE + " TEXT, " +
+                COLUMN_DUE_DATE + " INTEGER NOT NULL DEFAULT 0, " +
                 COLUMN_COMPLETED + " INTEGER DEFAULT 0)";
         db.execSQL(CREATE_TASKS_TABLE);
     }
 
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_DUE_DATE + " ON " + TABLE_TASKS + " (" + COLUMN_DUE_DATE + ")");
+        createStatusIndex(db);
+    }
+
+    private void createStatusIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_STATUS_DUE_DATE + " ON " + TABLE_TASKS +
+                " (" + COLUMN_COMPLETED + ", " + COLUMN_DUE_DATE + ")");
+    }
+
+    private void createSearchIndex(SQLiteDatabase db) {
+        // unicode61 приводит к нижнему регистру и кириллицу, а не только ASCII
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_TASKS_FTS + " USING fts4(content=\"" + TABLE_TASKS + "\", " +
+                COLUMN_TITLE + ", " + COLUMN_DESCRIPTION + ", tokenize=unicode61)");
+        // Старый текст удаляется из индекса до изменения строки, новый добавляется после.
+        // Переключение completed текст не меняет и индекс не трогает
+        db.execSQL("CREATE TRIGGER tasks_fts_after_insert AFTER INSERT ON " + TABLE_TASKS + " BEGIN " +
+                "INSERT INTO " + TABLE_TASKS_FTS + " (docid, " + COLUMN_TITLE + ", " + COLUMN_DESCRIPTION + ") " +
+                "VALUES (new." + COLUMN_ID + ", new." + COLUMN_TITLE + ", new." + COLUMN_DESCRIPTION + "); END");
+        db.execSQL("CREATE TRIGGER tasks_fts_before_update BEFORE UPDATE OF " + COLUMN_TITLE + ", " +
+                COLUMN_DESCRIPTION + " ON " + TABLE_TASKS + " BEGIN " +
+                "DELETE FROM " + TABLE_TASKS_FTS + " WHERE docid = old." + COLUMN_ID + "; END");
+        db.execSQL("CREATE TRIGGER tasks_fts_after_update AFTER UPDATE OF " + COLUMN_TITLE + ", " +
+                COLUMN_DESCRIPTION + " ON " + TABLE_TASKS + " BEGIN " +
+                "INSERT INTO " + TABLE_TASKS_FTS + " (docid, " + COLUMN_TITLE + ", " + COLUMN_DESCRIPTION + ") " +
+                "VALUES (new." + COLUMN_ID + ", new." + COLUMN_TITLE + ", new." + COLUMN_DESCRIPTION + "); END");
+        db.execSQL("CREATE TRIGGER tasks_fts_before_delete BEFORE DELETE ON " + TABLE_TASKS + " BEGIN " +
+                "DELETE FROM " + TABLE_TASKS_FTS + " WHERE docid = old." + COLUMN_ID + "; END");
+        // Индексируем уже существующие строки
+        db.execSQL("INSERT INTO " + TABLE_TASKS_FTS + " (" + TABLE_TASKS_FTS + ") VALUES ('rebuild')");
+    }
+
+    private void createArchiveTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ARCHIVED_TASKS + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_TITLE + " TEXT, " +
+                COLUMN_DESCRIPTION + " TEXT, " +
+                COLUMN_DUE_DATE + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_COMPLETED + " INTEGER DEFAULT 0, " +
+                COLUMN_ARCHIVED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + INDEX_ARCHIVED_DUE_DATE + " ON " + TABLE_ARCHIVED_TASKS +
+                " (" + COLUMN_DUE_DATE + ")");
+    }
+
+    private void createSyncTables(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_TASKS + " ADD COLUMN " + COLUMN_SYNC_ID + " TEXT");
+        db.execSQL("UPDATE " + TABLE_TASKS + " SET " + COLUMN_SYNC_ID + " = " + NEW_SYNC_ID);
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_SYNC_ID + " ON " + TABLE_TASKS + " (" + COLUMN_SYNC_ID + ")");
+        // fields - маска полей TaskChange, changed_at - время изменения в epoch millis
+        db.execSQL("CREATE TABLE " + TABLE_TASK_CHANGES + " (" +
+                "seq INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_SYNC_ID + " TEXT NOT NULL, " +
+                "fields INTEGER NOT NULL, " +
+                "changed_at INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + INDEX_TASK_CHANGES_SYNC_ID + " ON " + TABLE_TASK_CHANGES +
+                " (" + COLUMN_SYNC_ID + ")");
+        // watermark - версия последней строки, полученной с сервера
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+                "id INTEGER PRIMARY KEY CHECK (id = 1), " +
+                "enabled INTEGER NOT NULL, " +
+                "suppressed INTEGER NOT NULL, " +
+                "watermark INTEGER NOT NULL)");
+        db.execSQL("INSERT INTO " + TABLE_SYNC_STATE + " VALUES (1, 0, 0, 0)");
+
+        String logChange = "INSERT INTO " + TABLE_TASK_CHANGES + " (" + COLUMN_SYNC_ID + ", fields, changed_at) VALUES ";
+        db.execSQL("CREATE TRIGGER tasks_changes_after_insert AFTER INSERT ON " + TABLE_TASKS +
+                " WHEN " + WHEN_LOGGING + " BEGIN " +
+                logChange + "(new." + COLUMN_SYNC_ID + ", " + TaskChange.ALL_VALUE_FIELDS + ", " + NOW_MILLIS + "); END");
+        // Маска содержит только поля, значение которых действительно изменилось
+        String[] columns = {COLUMN_TITLE, COLUMN_DESCRIPTION, COLUMN_DUE_DATE, COLUMN_COMPLETED};
+        int[] fields = {TaskChange.TITLE, TaskChange.DESCRIPTION, TaskChange.DUE_DATE, TaskChange.COMPLETED};
+        StringBuilder changed = new StringBuilder();
+        StringBuilder mask = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            String differs = "old." + columns[i] + " IS NOT new." + columns[i];
+            changed.append(i == 0 ? "" : " OR ").append(differs);
+            mask.append(i == 0 ? "" : " + ").append("(CASE WHEN ").append(differs)
+                    .append(" THEN ").append(1 << fields[i]).append(" ELSE 0 END)");
+        }
+        db.execSQL("CREATE TRIGGER tasks_changes_after_update AFTER UPDATE OF " + COLUMN_TITLE + ", " +
+                COLUMN_DESCRIPTION + ", " + COLUMN_DUE_DATE + ", " + COLUMN_COMPLETED + " ON " + TABLE_TASKS +
+                " WHEN " + WHEN_LOGGING + " AND (" + changed + ") BEGIN " +
+                logChange + "(new." + COLUMN_SYNC_ID + ", " + mask + ", " + NOW_MILLIS + "); END");
+        db.execSQL("CREATE TRIGGER tasks_changes_after_delete AFTER DELETE ON " + TABLE_TASKS +
+                " WHEN " + WHEN_LOGGING + " BEGIN " +
+                logChange + "(old." + COLUMN_SYNC_ID + ", " + (1 << TaskChange.DELETED) + ", " + NOW_MILLIS + "); END");
+    }
+
+    private void createRecurrence(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_TASKS + " ADD COLUMN " + COLUMN_RECURRENCE + " TEXT");
+        db.execSQL("ALTER TABLE " + TABLE_ARCHIVED_TASKS + " ADD COLUMN " + COLUMN_RECURRENCE + " TEXT");
+        // Ключ и есть вся строка, поэтому таблица без rowid: одна B-tree без отдельного индекса
+        db.execSQL("CREATE TABLE " + TABLE_TASK_OCCURRENCES + " (" +
+                COLUMN_TASK_ID + " INTEGER NOT NULL, " +
+                COLUMN_DUE_DATE + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + COLUMN_TASK_ID + ", " + COLUMN_DUE_DATE + ")) WITHOUT ROWID");
+        db.execSQL("CREATE TRIGGER tasks_occurrences_after_delete AFTER DELETE ON " + TABLE_TASKS + " BEGIN " +
+                "DELETE FROM " + TABLE_TASK_OCCURRENCES + " WHERE " + COLUMN_TASK_ID + " = old." + COLUMN_ID + "; END");
+    }
+
+    // Задачи, перенесенные в архив до v10, остаются без sync_id: в таблице задач
+    // их строк уже нет, и восстановить его не из чего
+    private void createArchiveSyncId(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_ARCHIVED_TASKS + " ADD COLUMN " + COLUMN_SYNC_ID + " TEXT");
+        db.execSQL("CREATE INDEX " + INDEX_ARCHIVED_SYNC_ID + " ON " + TABLE_ARCHIVED_TASKS +
+                " (" + COLUMN_SYNC_ID + ")");
+    }
+
+    private void createTaskCounts(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_TASK_COUNTS + " (" +
+                COLUMN_BUCKET + " INTEGER PRIMARY KEY, " +
+                COLUMN_ACTIVE + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_COMPLETED + " INTEGER NOT NULL DEFAULT 0)");
+        // Строка интервала создается при первой задаче в нем и удаляется вместе с последней.
+        // UPSERT появился только в SQLite 3.24 (Android 11), поэтому INSERT OR IGNORE и UPDATE
+        db.execSQL("CREATE TRIGGER tasks_counts_after_insert AFTER INSERT ON " + TABLE_TASKS + " BEGIN " +
+                addToCount("new", "+") + " END");
+        db.execSQL("CREATE TRIGGER tasks_counts_after_update AFTER UPDATE OF " + COLUMN_DUE_DATE + ", " +
+                COLUMN_COMPLETED + " ON " + TABLE_TASKS + " WHEN old." + COLUMN_DUE_DATE + " IS NOT new." +
+                COLUMN_DUE_DATE + " OR old." + COLUMN_COMPLETED + " IS NOT new." + COLUMN_COMPLETED + " BEGIN " +
+                addToCount("old", "-") + addToCount("new", "+") + deleteEmptyCount("old") + " END");
+        db.execSQL("CREATE TRIGGER tasks_counts_after_delete AFTER DELETE ON " + TABLE_TASKS + " BEGIN " +
+                addToCount("old", "-") + deleteEmptyCount("old") + " END");
+        // Счетчики уже существующих задач
+        db.execSQL("INSERT INTO " + TABLE_TASK_COUNTS + " (" + COLUMN_BUCKET + ", " + COLUMN_ACTIVE + ", " +
+                COLUMN_COMPLETED + ") SELECT " + bucketOf("") + ", sum(" + isActive("") + "), sum(" +
+                isCompleted("") + ") FROM " + TABLE_TASKS + " GROUP BY 1");
+    }
+
+    // Интервал срока строки row ("new", "old" или "" для самой таблицы). Сроки неотрицательны,
+    // поэтому целочисленное деление SQLite совпадает с округлением вниз
+    private static String bucketOf(String row) {
+        return (row.isEmpty() ? "" : row + ".") + COLUMN_DUE_DATE + " / " + COUNT_BUCKET_MS;
+    }
+
+    // Условия те же, что в WHERE_ACTIVE и WHERE_NOT_ACTIVE без срока: NULL не считается никуда
+    private static String isActive(String row) {
+        return "ifnull(" + (row.isEmpty() ? "" : row + ".") + COLUMN_COMPLETED + " = 0, 0)";
+    }
+
+    private static String isCompleted(String row) {
+        return "ifnull(" + (row.isEmpty() ? "" : row + ".") + COLUMN_COMPLETED + " != 0, 0)";
+    }
+
+    private static String addToCount(String row, String sign) {
+        return "INSERT OR IGNORE INTO " + TABLE_TASK_COUNTS + " (" + COLUMN_BUCKET + ") VALUES (" + bucketOf(row) + "); " +
+                "UPDATE " + TABLE_TASK_COUNTS + " SET " +
+                COLUMN_ACTIVE + " = " + COLUMN_ACTIVE + " " + sign + " " + isActive(row) + ", " +
+                COLUMN_COMPLETED + " = " + COLUMN_COMPLETED + " " + sign + " " + isCompleted(row) +
+                " WHERE " + COLUMN_BUCKET + " = " + bucketOf(row) + ";";
+    }
+
+    private static String deleteEmptyCount(String row) {
+        return " DELETE FROM " + TABLE_TASK_COUNTS + " WHERE " + COLUMN_BUCKET + " = " + bucketOf(row) +
+                " AND " + COLUMN_ACTIVE + " = 0 AND " + COLUMN_COMPLETED + " = 0;";
+    }
+
+    private void dropAllTables(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASK_COUNTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASK_OCCURRENCES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASK_CHANGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARCHIVED_TASKS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASKS_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASKS);
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Удаляем старую таблицу и создаем новую
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASKS);
-        onCreate(db);
+        schemaVersion++;
+        // SQLiteOpenHelper вызывает onUpgrade внутри одной транзакции,
+        // поэтому при ошибке миграции база останется в старой версии
+        if (oldVersion < 2) {
+            // Схема v1 не сохранилась, переносить нечего
+            dropAllTables(db);
+            onCreate(db);
+            return;
+        }
+        if (oldVersion < 3) {
+            // Создает и индексы схемы v4
+            migrateDueDateToMillis(db);
+        } else if (oldVersion < 4) {
+            createStatusIndex(db);
+        }
+        if (oldVersion < 5) {
+            createSearchIndex(db);
+        }
+        if (oldVersion < 6) {
+            createArchiveTable(db);
+        }
+        if (oldVersion < 7) {
+            createSyncTables(db);
+        }
+        if (oldVersion < 8) {
+            createRecurrence(db);
+        }
+        if (oldVersion < 9) {
+            createTaskCounts(db);
+        }
+        if (oldVersion < 10) {
+            createArchiveSyncId(db);
+        }
     }
 
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // Обработка даунгрейда
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASKS);
+        dropAllTables(db);
         onCreate(db);
     }
 
-    public void addTask(Task task) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TITLE, task.getTitle());
-        values.put(COLUMN_DESCRIPTION, task.getDescription());
-        values.put(COLUMN_DUE_DATE, task.getDueDate());
-        values.put(COLUMN_COMPLETED, task.isCompleted() ? 1 : 0);
+    // v2 -> v3: пересоздаем таблицу, так как у столбца с типом TEXT
+    // SQLite будет превращать записанные числа обратно в строки
+    private void migrateDueDateToMillis(SQLiteDatabase db) {
+        String legacyTable = TABLE_TASKS + "_v2";
+        db.execSQL("ALTER TABLE " + TABLE_TASKS + " RENAME TO " + legacyTable);
+        createTasksTable(db);
+
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_TASKS + " (" +
+                COLUMN_ID + ", " + COLUMN_TITLE + ", " + COLUMN_DESCRIPTION + ", " +
+                COLUMN_DUE_DATE + ", " + COLUMN_COMPLETED + ") VALUES (?, ?, ?, ?, ?)");
+        Cursor cursor = db.rawQuery("SELECT " + LEGACY_TASK_COLUMNS + " FROM " + legacyTable, null);
+        try {
+            while (cursor.moveToNext()) {
+                insert.clearBindings();
+                insert.bindLong(1, cursor.getLong(0));
+                bindNullableString(insert, 2, cursor.getString(1));
+                bindNullableString(insert, 3, cursor.getString(2));
+                insert.bindLong(4, parseLegacyDueDate(cursor.getString(3)));
+                insert.bindLong(5, cursor.getInt(4));
+                insert.executeInsert();
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+        }
+
+        // Сохраняем счетчик AUTOINCREMENT, чтобы id удаленных задач не выдавались повторно
+        db.execSQL("UPDATE sqlite_sequence SET seq = (SELECT seq FROM sqlite_sequence WHERE name = '" +
+                legacyTable + "') WHERE name = '" + TABLE_TASKS + "'" +
+                " AND EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = '" + legacyTable + "')");
+        db.execSQL("DROP TABLE " + legacyTable);
+        createIndexes(db);
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
 
-        db.insert(TABLE_TASKS, null, values);
-        db.close();
+    private static long parseLegacyDueDate(String dueDate) {
+        if (dueDate == null) {
+            return 0;
+        }
+        try {
+            return DueDateFormat.parse(dueDate);
+        } catch (ParseException e) {
+            // Строку не удалось разобрать - задача сохраняется, но срок считается истекшим
+            Log.w(TAG, "Не удалось разобрать срок задачи: " + dueDate, e);
+            return 0;
+        }
+    }
+
+    // Соединение общее для потоков TaskRepository, поэтому методы его не закрывают
+    public long addTask(Task task) {
+        long start = Metrics.DB_ADD_TASK.begin();
+        long id = -1;
+        try {
+            synchronized (writeLock) {
+                SQLiteStatement insert = writeStatements().insert;
+                bindTask(insert, task);
+                id = insert.executeInsert();
+            }
+        } finally {
+            Metrics.DB_ADD_TASK.end(start, id == -1 ? 0 : 1);
+        }
+        return id;
+    }
+
+    // Вставка пачки задач в одной транзакции: одна синхронизация с диском вместо N
+    public void addTasks(List<Task> tasks) {
+        long start = Metrics.DB_ADD_TASKS.begin();
+        int inserted = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                SQLiteStatement insert = writeStatements().insert;
+                db.beginTransactionNonExclusive();
+                try {
+                    for (Task task : tasks) {
+                        bindTask(insert, task);
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                    inserted = tasks.size();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            Metrics.DB_ADD_TASKS.end(start, inserted);
+        }
     }
 
     public List<Task> getAllTasks() {
+        long start = Metrics.DB_GET_ALL_TASKS.begin();
+        List<Task> tasks = new ArrayList<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+
+            Cursor cursor = db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS, null);
+            readTasks(cursor, tasks);
+        } finally {
+            Metrics.DB_GET_ALL_TASKS.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    // Сначала актуальные задачи по возрастанию срока, затем просроченные и выполненные.
+    // Каждая часть читается диапазоном по индексу, поэтому SQLite не сортирует строки
+    public List<Task> getTasksOrdered(long now) {
+        long start = Metrics.DB_GET_TASKS_ORDERED.begin();
+        List<Task> tasks = new ArrayList<>();
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            String[] args = {String.valueOf(now)};
+
+            readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                    " WHERE " + WHERE_ACTIVE + ORDER_BY_DUE_DATE, args), tasks);
+            readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                    " WHERE " + WHERE_NOT_ACTIVE + ORDER_BY_DUE_DATE, args), tasks);
+        } finally {
+            Metrics.DB_GET_TASKS_ORDERED.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    // Страница того же порядка, что и getTasksOrdered, начиная после задачи key
+    // (или с нее, если inclusive). Позиция ищется по ключу (группа, срок, id), а не через
+    // OFFSET, поэтому страница в конце большого списка читается так же быстро, как первая
+    @Override
+    public List<Task> getTasksAfter(long now, Task key, boolean inclusive, int limit) {
+        long start = Metrics.DB_GET_TASKS_AFTER.begin();
+        List<Task> tasks = new ArrayList<>(limit);
+        try {
+            readTasksAfter(now, key, inclusive, limit, tasks);
+        } finally {
+            Metrics.DB_GET_TASKS_AFTER.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    private void readTasksAfter(long now, Task key, boolean inclusive, int limit, List<Task> tasks) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String nowArg = String.valueOf(now);
+        boolean keyIsActive = key == null || isActive(key, now);
+
+        if (keyIsActive) {
+            if (key == null) {
+                readPage(db, WHERE_ACTIVE, ORDER_BY_DUE_DATE, limit, tasks, nowArg);
+            } else {
+                readPage(db, WHERE_ACTIVE + (inclusive ? AND_FROM_KEY : AND_AFTER_KEY), ORDER_BY_DUE_DATE,
+                        limit, tasks, nowArg, keyArgs(key));
+            }
+        }
+        if (tasks.size() < limit) {
+            String where = "(" + WHERE_NOT_ACTIVE + ")";
+            if (keyIsActive) {
+                readPage(db, where, ORDER_BY_DUE_DATE, limit - tasks.size(), tasks, nowArg);
+            } else {
+                readPage(db, where + (inclusive ? AND_FROM_KEY : AND_AFTER_KEY), ORDER_BY_DUE_DATE,
+                        limit - tasks.size(), tasks, nowArg, keyArgs(key));
+            }
+        }
+    }
+
+    // Страница, которая заканчивается перед задачей key, в прямом порядке
+    @Override
+    public List<Task> getTasksBefore(long now, Task key, int limit) {
+        long start = Metrics.DB_GET_TASKS_BEFORE.begin();
+        List<Task> tasks = new ArrayList<>(limit);
+        try {
+            readTasksBefore(now, key, limit, tasks);
+        } finally {
+            Metrics.DB_GET_TASKS_BEFORE.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    private void readTasksBefore(long now, Task key, int limit, List<Task> tasks) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        String nowArg = String.valueOf(now);
+        boolean keyIsActive = isActive(key, now);
+
+        if (!keyIsActive) {
+            readPage(db, "(" + WHERE_NOT_ACTIVE + ")" + AND_BEFORE_KEY, ORDER_BY_DUE_DATE_DESC,
+                    limit, tasks, nowArg, keyArgs(key));
+        }
+        if (tasks.size() < limit) {
+            if (keyIsActive) {
+                readPage(db, WHERE_ACTIVE + AND_BEFORE_KEY, ORDER_BY_DUE_DATE_DESC,
+                        limit - tasks.size(), tasks, nowArg, keyArgs(key));
+            } else {
+                readPage(db, WHERE_ACTIVE, ORDER_BY_DUE_DATE_DESC, limit - tasks.size(), tasks, nowArg);
+            }
+        }
+        Collections.reverse(tasks);
+    }
+
+    // Поиск по словам запроса с учетом префиксов: "отч пла" найдет "Отчет по плану".
+    // Сначала идут задачи, где все слова есть в названии, затем совпадения в описании;
+    // внутри каждой группы - в порядке основного списка
+    public List<Task> search(String query, int limit) {
+        long start = Metrics.DB_SEARCH.begin();
         List<Task> tasks = new ArrayList<>();
+        try {
+            readSearchResults(query, limit, tasks);
+        } finally {
+            Metrics.DB_SEARCH.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    private void readSearchResults(String query, int limit, List<Task> tasks) {
+        String anyColumn = buildMatchExpression(query, "");
+        if (anyColumn.isEmpty()) {
+            return;
+        }
+        String titleOnly = buildMatchExpression(query, COLUMN_TITLE + ":");
         SQLiteDatabase db = this.getReadableDatabase();
+        String nowArg = String.valueOf(System.currentTimeMillis());
+        String matchIds = "SELECT docid FROM " + TABLE_TASKS_FTS + " WHERE " + TABLE_TASKS_FTS + " MATCH ?";
+        String orderBy = " ORDER BY (" + WHERE_NOT_ACTIVE + "), " + COLUMN_DUE_DATE + ", " + COLUMN_ID + " LIMIT ";
 
-        Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_TASKS, null);
-        if (cursor.moveToFirst()) {
-            do {
+        readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                " WHERE " + COLUMN_ID + " IN (" + matchIds + ")" + orderBy + limit,
+                new String[]{titleOnly, nowArg}), tasks);
+        if (tasks.size() < limit) {
+            readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                    " WHERE " + COLUMN_ID + " IN (" + matchIds + ") AND " + COLUMN_ID + " NOT IN (" + matchIds + ")" +
+                    orderBy + (limit - tasks.size()), new String[]{anyColumn, titleOnly, nowArg}), tasks);
+        }
+    }
+
+    // Каждое слово запроса превращается в префиксный терм "слово*". Символы,
+    // которые FTS воспринимает как синтаксис (кавычки, минус, звездочка), отбрасываются
+    static String buildMatchExpression(String query, String columnPrefix) {
+        StringBuilder expression = new StringBuilder();
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append(columnPrefix).append(word).append('*');
+        }
+        return expression.toString();
+    }
+
+    // Обход всех задач по id через курсор, без сборки списка: память не зависит от числа строк.
+    // Объект задачи переиспользуется между вызовами consumer
+    public void readAllTasks(TaskConsumer consumer) throws IOException {
+        long start = Metrics.DB_READ_ALL_TASKS.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                    " ORDER BY " + COLUMN_ID, null);
+            try {
+                Task task = new Task();
+                while (cursor.moveToNext()) {
+                    task.setId(cursor.getInt(0));
+                    task.setTitle(cursor.getString(1));
+                    task.setDescription(cursor.getString(2));
+                    task.setDueDate(cursor.getLong(3));
+                    task.setCompleted(cursor.getInt(4) == 1);
+                    task.setRecurrence(readRecurrence(cursor, 5));
+                    consumer.accept(task);
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            Metrics.DB_READ_ALL_TASKS.end(start, rows);
+        }
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    // Описания задач по id, порциями, чтобы не превысить лимит параметров запроса
+    public void readDescriptions(long[] ids, DescriptionConsumer consumer) {
+        long start = Metrics.DB_READ_DESCRIPTIONS.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            for (int from = 0; from < ids.length; from += MAX_QUERY_ARGS) {
+                int count = Math.min(MAX_QUERY_ARGS, ids.length - from);
+                StringBuilder placeholders = new StringBuilder();
+                String[] args = new String[count];
+                for (int i = 0; i < count; i++) {
+                    placeholders.append(i == 0 ? "?" : ", ?");
+                    args[i] = String.valueOf(ids[from + i]);
+                }
+                Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DESCRIPTION + " FROM " +
+                        TABLE_TASKS + " WHERE " + COLUMN_ID + " IN (" + placeholders + ")", args);
+                try {
+                    while (cursor.moveToNext()) {
+                        consumer.accept(cursor.getInt(0), cursor.getString(1));
+                        rows++;
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+        } finally {
+            Metrics.DB_READ_DESCRIPTIONS.end(start, rows);
+        }
+    }
+
+    public interface DescriptionConsumer {
+        void accept(int taskId, String description);
+    }
+
+    public interface TaskConsumer {
+        void accept(Task task) throws IOException;
+    }
+
+    // Сроки всех активных задач. Читается только индекс (completed, due_date),
+    // к самой таблице запрос не обращается
+    public void readActiveDeadlines(long now, DeadlineConsumer consumer) {
+        long start = Metrics.DB_READ_ACTIVE_DEADLINES.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DUE_DATE + " FROM " + TABLE_TASKS +
+                    " WHERE " + WHERE_ACTIVE, new String[]{String.valueOf(now)});
+            try {
+                while (cursor.moveToNext()) {
+                    consumer.accept(cursor.getInt(0), cursor.getLong(1));
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            Metrics.DB_READ_ACTIVE_DEADLINES.end(start, rows);
+        }
+    }
+
+    public interface DeadlineConsumer {
+        void accept(int taskId, long dueDate);
+    }
+
+    static boolean isActive(Task task, long now) {
+        return !task.isCompleted() && task.getDueDate() >= now;
+    }
+
+    private static String[] keyArgs(Task key) {
+        String dueDate = String.valueOf(key.getDueDate());
+        return new String[]{dueDate, dueDate, String.valueOf(key.getId())};
+    }
+
+    private static void readPage(SQLiteDatabase db, String where, String orderBy, int limit,
+                                 List<Task> tasks, String nowArg, String... keyArgs) {
+        String[] args = new String[1 + keyArgs.length];
+        args[0] = nowArg;
+        System.arraycopy(keyArgs, 0, args, 1, keyArgs.length);
+        readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                " WHERE " + where + orderBy + " LIMIT " + limit, args), tasks);
+    }
+
+    private static void readTasks(Cursor cursor, List<Task> tasks) {
+        try {
+            while (cursor.moveToNext()) {
                 Task task = new Task();
                 task.setId(cursor.getInt(0));
                 task.setTitle(cursor.getString(1));
                 task.setDescription(cursor.getString(2));
-                task.setDueDate(cursor.getString(3));
+                task.setDueDate(cursor.getLong(3));
                 task.setCompleted(cursor.getInt(4) == 1);
+                task.setRecurrence(readRecurrence(cursor, 5));
                 tasks.add(task);
-            } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
         }
-        cursor.close();
-        db.close();
+    }
 
-        return tasks;
+    private static Recurrence readRecurrence(Cursor cursor, int column) {
+        String rule = cursor.getString(column);
+        if (rule == null) {
+            return null;
+        }
+        try {
+            return Recurrence.parse(rule);
+        } catch (IllegalArgumentException e) {
+            // Задача остается, но как одиночная со сроком текущего повторения
+            Log.w(TAG, "Не удалось разобрать правило повторения: " + rule, e);
+            return null;
+        }
     }
 
     public void updateTask(Task task) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_TITLE, task.getTitle());
-        values.put(COLUMN_DESCRIPTION, task.getDescription());
-        values.put(COLUMN_DUE_DATE, task.getDueDate());
-        values.put(COLUMN_COMPLETED, task.isCompleted() ? 1 : 0);
+        long start = Metrics.DB_UPDATE_TASK.begin();
+        int rows = 0;
+        try {
+            synchronized (writeLock) {
+                SQLiteStatement update = writeStatements().update;
+                bindTask(update, task);
+                update.bindLong(6, task.getId());
+                rows = update.executeUpdateDelete();
+            }
+        } finally {
+            Metrics.DB_UPDATE_TASK.end(start, rows);
+        }
+    }
+
+    public void updateCompleted(long[] ids, boolean completed) {
+        boolean[] values = new boolean[ids.length];
+        Arrays.fill(values, completed);
+        updateCompleted(ids, values);
+    }
+
+    // Свое значение для каждой задачи, все одной транзакцией. Выполненное повторение
+    // повторяющейся задачи записывается в task_occurrences, а задача переходит к следующему
+    // повторению (см. Task.completeOccurrence); после последнего она становится выполненной
+    public void updateCompleted(long[] ids, boolean[] completed) {
+        long start = Metrics.DB_UPDATE_COMPLETED.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                WriteStatements statements = writeStatements();
+                SQLiteStatement update = statements.updateCompleted;
+                db.beginTransactionNonExclusive();
+                try {
+                    int updated = 0;
+                    for (int i = 0; i < ids.length; i++) {
+                        update.bindLong(1, completed[i] ? 1 : 0);
+                        update.bindLong(2, ids[i]);
+                        update.bindLong(3, completed[i] ? 1 : 0);
+                        int changed = update.executeUpdateDelete();
+                        if (changed == 0 && completed[i]) {
+                            changed = completeOccurrence(db, statements, ids[i]);
+                        } else if (changed > 0 && !completed[i]) {
+                            // Снятая отметка последнего повторения
+                            statements.deleteOccurrence.bindLong(1, ids[i]);
+                            statements.deleteOccurrence.bindLong(2, ids[i]);
+                            statements.deleteOccurrence.executeUpdateDelete();
+                        }
+                        updated += changed;
+                    }
+                    db.setTransactionSuccessful();
+                    rows = updated;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            Metrics.DB_UPDATE_COMPLETED.end(start, rows);
+        }
+    }
+
+    // Повторяющаяся задача не отмечена выполненной (иначе updateCompleted ее бы обновил):
+    // записывает ее текущее повторение и переводит задачу на следующее
+    private static int completeOccurrence(SQLiteDatabase db, WriteStatements statements, long id) {
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_DUE_DATE + ", " + COLUMN_COMPLETED + ", " +
+                COLUMN_RECURRENCE + " FROM " + TABLE_TASKS + " WHERE " + COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)});
+        Task task = new Task();
+        try {
+            if (!cursor.moveToFirst()) {
+                return 0;
+            }
+            task.setDueDate(cursor.getLong(0));
+            task.setCompleted(cursor.getInt(1) == 1);
+            task.setRecurrence(readRecurrence(cursor, 2));
+        } finally {
+            cursor.close();
+        }
+        long dueDate = task.getDueDate();
+        if (task.getRecurrence() == null || !task.completeOccurrence()) {
+            return 0;
+        }
+        statements.insertOccurrence.bindLong(1, id);
+        statements.insertOccurrence.bindLong(2, dueDate);
+        statements.insertOccurrence.executeInsert();
+        moveToOccurrence(statements, id, task);
+        return 1;
+    }
+
+    private static void moveToOccurrence(WriteStatements statements, long id, Task task) {
+        SQLiteStatement update = statements.updateOccurrence;
+        update.bindLong(1, task.getDueDate());
+        update.bindLong(2, task.isCompleted() ? 1 : 0);
+        update.bindLong(3, id);
+        update.executeUpdateDelete();
+    }
 
-        db.update(TABLE_TASKS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(task.getId())});
-        db.close();
+    // Отмечает выполненными все задачи, срок которых истек к моменту now. Повторяющиеся
+    // задачи вместо этого переходят к первому повторению не раньше now; истекшие
+    // повторения выполненными не записываются
+    public int completeOverdueTasks(long now) {
+        long start = Metrics.DB_COMPLETE_OVERDUE.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                WriteStatements statements = writeStatements();
+                db.beginTransactionNonExclusive();
+                try {
+                    SQLiteStatement update = statements.completeOverdue;
+                    update.bindLong(1, now);
+                    int updated = update.executeUpdateDelete();
+                    Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + ", " + COLUMN_DUE_DATE + ", " +
+                            COLUMN_RECURRENCE + " FROM " + TABLE_TASKS + " WHERE " + COLUMN_COMPLETED +
+                            " = 0 AND " + COLUMN_DUE_DATE + " < ?", new String[]{String.valueOf(now)});
+                    try {
+                        Task task = new Task();
+                        while (cursor.moveToNext()) {
+                            task.setCompleted(false);
+                            task.setDueDate(cursor.getLong(1));
+                            task.setRecurrence(readRecurrence(cursor, 2));
+                            if (task.getRecurrence() == null) {
+                                // Правило не разобралось - задача истекает как одиночная
+                                task.setCompleted(true);
+                            } else {
+                                task.skipExpiredOccurrences(now);
+                            }
+                            moveToOccurrence(statements, cursor.getLong(0), task);
+                            updated++;
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    db.setTransactionSuccessful();
+                    rows = updated;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            Metrics.DB_COMPLETE_OVERDUE.end(start, rows);
+        }
+        return rows;
     }
 
     public void deleteTask(int taskId) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_TASKS, COLUMN_ID + " = ?", new String[]{String.valueOf(taskId)});
-        db.close();
+        long start = Metrics.DB_DELETE_TASK.begin();
+        int rows = 0;
+        try {
+            synchronized (writeLock) {
+                SQLiteStatement delete = writeStatements().delete;
+                delete.bindLong(1, taskId);
+                rows = delete.executeUpdateDelete();
+            }
+        } finally {
+            Metrics.DB_DELETE_TASK.end(start, rows);
+        }
+    }
+
+    public void deleteTasks(long[] ids) {
+        long start = Metrics.DB_DELETE_TASKS.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                SQLiteStatement delete = writeStatements().delete;
+                db.beginTransactionNonExclusive();
+                try {
+                    int deleted = 0;
+                    for (long id : ids) {
+                        delete.bindLong(1, id);
+                        deleted += delete.executeUpdateDelete();
+                    }
+                    db.setTransactionSuccessful();
+                    rows = deleted;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            Metrics.DB_DELETE_TASKS.end(start, rows);
+        }
+    }
+
+    // Повторения задачи в интервале [from, to) по возрастанию, не больше limit. Строк под
+    // повторения нет: каждое - копия задачи со своим сроком. Из task_occurrences читаются
+    // только отметки этого интервала; текущее повторение берет отметку самой задачи
+    public List<Task> getOccurrences(Task task, long from, long to, int limit) {
+        long start = Metrics.DB_GET_OCCURRENCES.begin();
+        List<Task> occurrences = new ArrayList<>();
+        try {
+            Recurrence recurrence = task.getRecurrence();
+            if (recurrence == null) {
+                if (task.getDueDate() >= from && task.getDueDate() < to && limit > 0) {
+                    occurrences.add(new Task(task));
+                }
+                return occurrences;
+            }
+            SQLiteDatabase db = this.getReadableDatabase();
+            Cursor cursor = db.rawQuery("SELECT " + COLUMN_DUE_DATE + " FROM " + TABLE_TASK_OCCURRENCES +
+                    " WHERE " + COLUMN_TASK_ID + " = ? AND " + COLUMN_DUE_DATE + " >= ? AND " +
+                    COLUMN_DUE_DATE + " < ? ORDER BY " + COLUMN_DUE_DATE, new String[]{
+                    String.valueOf(task.getId()), String.valueOf(from), String.valueOf(to)});
+            long[] completed;
+            try {
+                completed = new long[cursor.getCount()];
+                for (int i = 0; cursor.moveToNext(); i++) {
+                    completed[i] = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            recurrence.occurrencesBetween(from, to, limit, dueDate -> {
+                Task occurrence = new Task(task);
+                occurrence.setDueDate(dueDate);
+                occurrence.setCompleted(dueDate == task.getDueDate()
+                        ? task.isCompleted() : Arrays.binarySearch(completed, dueDate) >= 0);
+                occurrences.add(occurrence);
+            });
+        } finally {
+            Metrics.DB_GET_OCCURRENCES.end(start, occurrences.size());
+        }
+        return occurrences;
+    }
+
+    // Сводка для заголовка списка одним запросом, то есть по одному снимку базы.
+    // Число активных задач в интервале сроков складывается из счетчиков task_counts,
+    // а строки tasks читаются по индексу только в неполных интервалах на краях.
+    // Поэтому время зависит от числа интервалов со сроками, а не от числа задач
+    public TaskSummary getSummary(long now, long todayEnd, long weekEnd) {
+        long start = Metrics.DB_GET_SUMMARY.begin();
+        TaskSummary summary = null;
+        try {
+            List<String> args = new ArrayList<>();
+            StringBuilder sql = new StringBuilder("SELECT (SELECT total(" + COLUMN_ACTIVE + ") FROM " +
+                    TABLE_TASK_COUNTS + "), (SELECT total(" + COLUMN_COMPLETED + ") FROM " + TABLE_TASK_COUNTS + "), ");
+            appendActiveBetween(sql, args, now, Long.MAX_VALUE);
+            sql.append(", ");
+            appendActiveBetween(sql, args, now, Math.max(todayEnd, now));
+            sql.append(", ");
+            appendActiveBetween(sql, args, now, Math.max(weekEnd, now));
+            Cursor cursor = getReadableDatabase().rawQuery(sql.toString(), args.toArray(new String[0]));
+            try {
+                cursor.moveToFirst();
+                long active = cursor.getLong(2);
+                summary = new TaskSummary(active, cursor.getLong(0) - active, cursor.getLong(1),
+                        cursor.getLong(3), cursor.getLong(4));
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            Metrics.DB_GET_SUMMARY.end(start, 1);
+        }
+        return summary;
+    }
+
+    // Активные задачи со сроком в [from, to): целые интервалы из task_counts
+    // и строки tasks в неполных интервалах по краям
+    private static void appendActiveBetween(StringBuilder sql, List<String> args, long from, long to) {
+        long firstBucket = (from + COUNT_BUCKET_MS - 1) / COUNT_BUCKET_MS;
+        long endBucket = to / COUNT_BUCKET_MS;
+        if (firstBucket >= endBucket) {
+            appendActiveRows(sql, args, from, to);
+            return;
+        }
+        sql.append("((SELECT total(" + COLUMN_ACTIVE + ") FROM " + TABLE_TASK_COUNTS + " WHERE " +
+                COLUMN_BUCKET + " >= ? AND " + COLUMN_BUCKET + " < ?) + ");
+        args.add(String.valueOf(firstBucket));
+        args.add(String.valueOf(endBucket));
+        appendActiveRows(sql, args, from, firstBucket * COUNT_BUCKET_MS);
+        sql.append(" + ");
+        appendActiveRows(sql, args, endBucket * COUNT_BUCKET_MS, to);
+        sql.append(")");
+    }
+
+    private static void appendActiveRows(StringBuilder sql, List<String> args, long from, long to) {
+        sql.append("(SELECT count(*) FROM " + TABLE_TASKS + " WHERE " + COLUMN_COMPLETED + " = 0 AND " +
+                COLUMN_DUE_DATE + " >= ? AND " + COLUMN_DUE_DATE + " < ?)");
+        args.add(String.valueOf(from));
+        args.add(String.valueOf(to));
+    }
+
+    // Переносит в архив до limit задач со сроком раньше cutoff, самые старые первыми,
+    // одной транзакцией. Возвращает id перенесенных задач
+    public long[] archiveTasks(long cutoff, int limit, long archivedAt) {
+        long start = Metrics.DB_ARCHIVE_TASKS.begin();
+        long[] ids = new long[0];
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                db.beginTransactionNonExclusive();
+                try {
+                    Cursor cursor = db.rawQuery("SELECT " + COLUMN_ID + " FROM " + TABLE_TASKS +
+                            " WHERE " + COLUMN_DUE_DATE + " < ?" + ORDER_BY_DUE_DATE + " LIMIT " +
+                            Math.min(limit, MAX_QUERY_ARGS), new String[]{String.valueOf(cutoff)});
+                    long[] selected;
+                    try {
+                        selected = new long[cursor.getCount()];
+                        for (int i = 0; cursor.moveToNext(); i++) {
+                            selected[i] = cursor.getLong(0);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    if (selected.length > 0) {
+                        String[] args = new String[selected.length];
+                        StringBuilder placeholders = new StringBuilder();
+                        for (int i = 0; i < selected.length; i++) {
+                            args[i] = String.valueOf(selected[i]);
+                            placeholders.append(i == 0 ? "?" : ", ?");
+                        }
+                        String whereIds = " WHERE " + COLUMN_ID + " IN (" + placeholders + ")";
+                        // Архив - локальная политика хранения: на сервере задачи не удаляются
+                        setChangeLogSuppressed(db, true);
+                        db.execSQL("INSERT INTO " + TABLE_ARCHIVED_TASKS + " (" + TASK_COLUMNS + ", " +
+                                COLUMN_SYNC_ID + ", " + COLUMN_ARCHIVED_AT + ") SELECT " + TASK_COLUMNS + ", " +
+                                COLUMN_SYNC_ID + ", " + archivedAt + " FROM " + TABLE_TASKS + whereIds, args);
+                        db.execSQL("DELETE FROM " + TABLE_TASKS + whereIds, args);
+                        setChangeLogSuppressed(db, false);
+                    }
+                    db.setTransactionSuccessful();
+                    ids = selected;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            Metrics.DB_ARCHIVE_TASKS.end(start, ids.length);
+        }
+        return ids;
+    }
+
+    // Страница архива после задачи key (или с нее), от новых сроков к старым
+    public List<Task> getArchivedTasksAfter(Task key, boolean inclusive, int limit) {
+        long start = Metrics.DB_GET_ARCHIVED_TASKS.begin();
+        List<Task> tasks = new ArrayList<>(limit);
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            String where = key == null ? "" : " WHERE " + (inclusive ? WHERE_NOT_NEWER_THAN_KEY : WHERE_OLDER_THAN_KEY);
+            readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_ARCHIVED_TASKS + where +
+                    ORDER_BY_DUE_DATE_DESC + " LIMIT " + limit, key == null ? null : keyArgs(key)), tasks);
+        } finally {
+            Metrics.DB_GET_ARCHIVED_TASKS.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    // Страница архива, которая заканчивается перед задачей key, в прямом порядке
+    public List<Task> getArchivedTasksBefore(Task key, int limit) {
+        long start = Metrics.DB_GET_ARCHIVED_TASKS.begin();
+        List<Task> tasks = new ArrayList<>(limit);
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            readTasks(db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_ARCHIVED_TASKS +
+                    " WHERE " + WHERE_NEWER_THAN_KEY + ORDER_BY_DUE_DATE + " LIMIT " + limit,
+                    keyArgs(key)), tasks);
+            Collections.reverse(tasks);
+        } finally {
+            Metrics.DB_GET_ARCHIVED_TASKS.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    // Возвращает освобожденное место файлу. Первый раз включает auto_vacuum = INCREMENTAL,
+    // что требует полного VACUUM; дальше свободные страницы отдаются по maxPages за раз.
+    // VACUUM не работает внутри транзакции, поэтому вызывать вне beginTransaction
+    public void compact(int maxPages) {
+        long start = Metrics.DB_COMPACT.begin();
+        long freePages = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+                if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+                    db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+                    db.execSQL("VACUUM");
+                } else if (freePages > 0) {
+                    // incremental_vacuum освобождает по странице на каждый шаг запроса,
+                    // поэтому курсор нужно прочитать до конца
+                    Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+                    try {
+                        while (cursor.moveToNext()) {
+                            // только шаги запроса
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            }
+        } finally {
+            Metrics.DB_COMPACT.end(start, freePages);
+        }
+    }
+
+    // Включает журнал изменений для синхронизации. Уже существующие задачи попадают
+    // в журнал как новые, чтобы первая синхронизация отправила их на сервер
+    public void enableChangeLog() {
+        SQLiteDatabase db = getWritableDatabase();
+        synchronized (writeLock) {
+            db.beginTransactionNonExclusive();
+            try {
+                if (DatabaseUtils.longForQuery(db, "SELECT enabled FROM " + TABLE_SYNC_STATE, null) == 0) {
+                    db.execSQL("UPDATE " + TABLE_SYNC_STATE + " SET enabled = 1");
+                    db.execSQL("INSERT INTO " + TABLE_TASK_CHANGES + " (" + COLUMN_SYNC_ID + ", fields, changed_at) " +
+                            "SELECT " + COLUMN_SYNC_ID + ", " + TaskChange.ALL_VALUE_FIELDS + ", " + NOW_MILLIS +
+                            " FROM " + TABLE_TASKS);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    public long getSyncWatermark() {
+        return DatabaseUtils.longForQuery(getReadableDatabase(),
+                "SELECT watermark FROM " + TABLE_SYNC_STATE, null);
+    }
+
+    // Читает до limit записей журнала по порядку и собирает их в изменения задач:
+    // несколько записей одной задачи дают одно изменение с текущими значениями полей.
+    // Возвращает seq последней прочитанной записи или 0, если журнал пуст
+    public long readPendingChanges(int limit, List<TaskChange> changes) {
+        long start = Metrics.DB_READ_PENDING_CHANGES.begin();
+        long lastSeq = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            Map<String, TaskChange> bySyncId = new LinkedHashMap<>();
+            // Журнал и задачи читаются одним снимком, без записей между ними
+            synchronized (writeLock) {
+                db.beginTransactionNonExclusive();
+                try {
+                    Cursor cursor = db.rawQuery("SELECT seq, " + COLUMN_SYNC_ID + ", fields, changed_at FROM " +
+                            TABLE_TASK_CHANGES + " ORDER BY seq LIMIT " + Math.min(limit, MAX_QUERY_ARGS), null);
+                    try {
+                        while (cursor.moveToNext()) {
+                            lastSeq = cursor.getLong(0);
+                            String syncId = cursor.getString(1);
+                            TaskChange change = bySyncId.get(syncId);
+                            if (change == null) {
+                                change = new TaskChange(syncId);
+                                bySyncId.put(syncId, change);
+                            }
+                            change.touch(cursor.getInt(2), cursor.getLong(3));
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    if (!bySyncId.isEmpty()) {
+                        readCurrentValues(db, bySyncId);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            for (TaskChange change : bySyncId.values()) {
+                if (change.found) {
+                    // Задачу удалили и снова получили с сервера - удаление уже неактуально
+                    change.times[TaskChange.DELETED] = 0;
+                    changes.add(change);
+                } else if (change.times[TaskChange.DELETED] > 0) {
+                    change.deleted = true;
+                    changes.add(change);
+                }
+                // Иначе задачи нет и удаление не записано: ее перенесли в архив или удалили
+                // по данным сервера, отправлять нечего
+            }
+        } finally {
+            Metrics.DB_READ_PENDING_CHANGES.end(start, changes.size());
+        }
+        return lastSeq;
+    }
+
+    private static void readCurrentValues(SQLiteDatabase db, Map<String, TaskChange> bySyncId) {
+        String[] args = bySyncId.keySet().toArray(new String[0]);
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_SYNC_ID + ", " + COLUMN_TITLE + ", " +
+                COLUMN_DESCRIPTION + ", " + COLUMN_DUE_DATE + ", " + COLUMN_COMPLETED + " FROM " + TABLE_TASKS +
+                " WHERE " + COLUMN_SYNC_ID + " IN (" + placeholders + ")", args);
+        try {
+            while (cursor.moveToNext()) {
+                TaskChange change = bySyncId.get(cursor.getString(0));
+                change.found = true;
+                change.title = cursor.getString(1);
+                change.description = cursor.getString(2);
+                change.dueDate = cursor.getLong(3);
+                change.completed = cursor.getInt(4) == 1;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Удаляет отправленные записи журнала; более поздние записи остаются
+    public void deletePendingChanges(long lastSeq) {
+        SQLiteDatabase db = getWritableDatabase();
+        synchronized (writeLock) {
+            db.delete(TABLE_TASK_CHANGES, "seq <= ?", new String[]{String.valueOf(lastSeq)});
+        }
+    }
+
+    // Применяет изменения с сервера одной транзакцией и сохраняет watermark в ней же.
+    // Поле задачи меняется, только если на сервере оно изменено позже, чем в еще не
+    // отправленной локальной правке. Сами эти записи в журнал не попадают.
+    // Возвращает число задач, которые добавлены, изменены или удалены
+    public int applyRemoteChanges(List<TaskChange> changes, long watermark) {
+        long start = Metrics.DB_APPLY_REMOTE_CHANGES.begin();
+        int rows = 0;
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            synchronized (writeLock) {
+                db.beginTransactionNonExclusive();
+                try {
+                    setChangeLogSuppressed(db, true);
+                    int applied = 0;
+                    for (TaskChange change : changes) {
+                        if (applyRemoteChange(db, change)) {
+                            applied++;
+                        }
+                    }
+                    setChangeLogSuppressed(db, false);
+                    db.execSQL("UPDATE " + TABLE_SYNC_STATE + " SET watermark = ?", new Object[]{watermark});
+                    db.setTransactionSuccessful();
+                    rows = applied;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            Metrics.DB_APPLY_REMOTE_CHANGES.end(start, rows);
+        }
+        return rows;
+    }
+
+    private static boolean applyRemoteChange(SQLiteDatabase db, TaskChange remote) {
+        String[] syncIdArg = {remote.syncId};
+        // Локальные правки этой задачи, еще не отправленные на сервер
+        TaskChange local = new TaskChange(remote.syncId);
+        Cursor cursor = db.rawQuery("SELECT fields, changed_at FROM " + TABLE_TASK_CHANGES +
+                " WHERE " + COLUMN_SYNC_ID + " = ?", syncIdArg);
+        try {
+            while (cursor.moveToNext()) {
+                local.touch(cursor.getInt(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        long id = -1;
+        cursor = db.rawQuery("SELECT " + TASK_COLUMNS + " FROM " + TABLE_TASKS +
+                " WHERE " + COLUMN_SYNC_ID + " = ?", syncIdArg);
+        try {
+            if (cursor.moveToFirst()) {
+                id = cursor.getLong(0);
+                local.title = cursor.getString(1);
+                local.description = cursor.getString(2);
+                local.dueDate = cursor.getLong(3);
+                local.completed = cursor.getInt(4) == 1;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (remote.deleted) {
+            if (id < 0 || remote.times[TaskChange.DELETED] <= local.latestTime()) {
+                return false;
+            }
+            db.delete(TABLE_TASKS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+            db.delete(TABLE_TASK_CHANGES, COLUMN_SYNC_ID + " = ?", syncIdArg);
+            return true;
+        }
+        if (id < 0) {
+            // Задача в архиве: на сервере она осталась, но если вставить ее снова,
+            // она окажется и в архиве, и в списке задач
+            if (DatabaseUtils.queryNumEntries(db, TABLE_ARCHIVED_TASKS, COLUMN_SYNC_ID + " = ?", syncIdArg) > 0) {
+                return false;
+            }
+            // Локальное удаление новее всех правок на сервере - оно уйдет со следующей отправкой
+            if (local.times[TaskChange.DELETED] >= remote.latestTime()) {
+                return false;
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_SYNC_ID, remote.syncId);
+            values.put(COLUMN_TITLE, remote.title);
+            values.put(COLUMN_DESCRIPTION, remote.description);
+            values.put(COLUMN_DUE_DATE, remote.dueDate);
+            values.put(COLUMN_COMPLETED, remote.completed ? 1 : 0);
+            db.insertOrThrow(TABLE_TASKS, null, values);
+            db.delete(TABLE_TASK_CHANGES, COLUMN_SYNC_ID + " = ?", syncIdArg);
+            return true;
+        }
+
+        boolean changed = false;
+        if (remote.times[TaskChange.TITLE] > local.times[TaskChange.TITLE]
+                && !Objects.equals(remote.title, local.title)) {
+            local.title = remote.title;
+            changed = true;
+        }
+        if (remote.times[TaskChange.DESCRIPTION] > local.times[TaskChange.DESCRIPTION]
+                && !Objects.equals(remote.description, local.description)) {
+            local.description = remote.description;
+            changed = true;
+        }
+        if (remote.times[TaskChange.DUE_DATE] > local.times[TaskChange.DUE_DATE]
+                && remote.dueDate != local.dueDate) {
+            local.dueDate = remote.dueDate;
+            changed = true;
+        }
+        if (remote.times[TaskChange.COMPLETED] > local.times[TaskChange.COMPLETED]
+                && remote.completed != local.completed) {
+            local.completed = remote.completed;
+            changed = true;
+        }
+        if (changed) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_TITLE, local.title);
+            values.put(COLUMN_DESCRIPTION, local.description);
+            values.put(COLUMN_DUE_DATE, local.dueDate);
+            values.put(COLUMN_COMPLETED, local.completed ? 1 : 0);
+            db.update(TABLE_TASKS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+        }
+        return changed;
+    }
+
+    // Вызывается внутри транзакции: другие записи в это время ждут writeLock
+    private static void setChangeLogSuppressed(SQLiteDatabase db, boolean suppressed) {
+        db.execSQL("UPDATE " + TABLE_SYNC_STATE + " SET suppressed = " + (suppressed ? 1 : 0));
+    }
+
+    private static void bindTask(SQLiteStatement statement, Task task) {
+        bindNullableString(statement, 1, task.getTitle());
+        bindNullableString(statement, 2, task.getDescription());
+        statement.bindLong(3, task.getDueDate());
+        statement.bindLong(4, task.isCompleted() ? 1 : 0);
+        Recurrence recurrence = task.getRecurrence();
+        bindNullableString(statement, 5, recurrence == null ? null : recurrence.toString());
+    }
+
+    // Скомпилированные запросы на запись. Они привязаны к открытому соединению,
+    // поэтому пересоздаются, если база была закрыта и открыта заново.
+    // Вызывать только под writeLock
+    private WriteStatements writeStatements() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (writeStatements == null || writeStatements.db != db) {
+            if (writeStatements != null) {
+                writeStatements.close();
+            }
+            writeStatements = new WriteStatements(db);
+        }
+        return writeStatements;
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            if (writeStatements != null) {
+                writeStatements.close();
+                writeStatements = null;
+            }
+            super.close();
+        }
+    }
+
+    private static final class WriteStatements {
+        final SQLiteDatabase db;
+        final SQLiteStatement insert;
+        final SQLiteStatement update;
+        final SQLiteStatement updateCompleted;
+        final SQLiteStatement completeOverdue;
+        final SQLiteStatement delete;
+        final SQLiteStatement updateOccurrence;
+        final SQLiteStatement insertOccurrence;
+        final SQLiteStatement deleteOccurrence;
+
+        WriteStatements(SQLiteDatabase db) {
+            this.db = db;
+            insert = db.compileStatement("INSERT INTO " + TABLE_TASKS + " (" +
+                    COLUMN_TITLE + ", " + COLUMN_DESCRIPTION + ", " + COLUMN_DUE_DATE + ", " +
+                    COLUMN_COMPLETED + ", " + COLUMN_RECURRENCE + ", " + COLUMN_SYNC_ID + ") VALUES (?, ?, ?, ?, ?, " +
+                    NEW_SYNC_ID + ")");
+            update = db.compileStatement("UPDATE " + TABLE_TASKS + " SET " +
+                    COLUMN_TITLE + " = ?, " + COLUMN_DESCRIPTION + " = ?, " + COLUMN_DUE_DATE + " = ?, " +
+                    COLUMN_COMPLETED + " = ?, " + COLUMN_RECURRENCE + " = ? WHERE " + COLUMN_ID + " = ?");
+            // Отметку повторяющейся задачи этот запрос не ставит, ее записывает completeOccurrence
+            updateCompleted = db.compileStatement("UPDATE " + TABLE_TASKS + " SET " +
+                    COLUMN_COMPLETED + " = ? WHERE " + COLUMN_ID + " = ? AND (" +
+                    COLUMN_RECURRENCE + " IS NULL OR ? = 0)");
+            completeOverdue = db.compileStatement("UPDATE " + TABLE_TASKS + " SET " +
+                    COLUMN_COMPLETED + " = 1 WHERE " + COLUMN_COMPLETED + " = 0 AND " + COLUMN_DUE_DATE + " < ?" +
+                    " AND " + COLUMN_RECURRENCE + " IS NULL");
+            delete = db.compileStatement("DELETE FROM " + TABLE_TASKS + " WHERE " + COLUMN_ID + " = ?");
+            updateOccurrence = db.compileStatement("UPDATE " + TABLE_TASKS + " SET " +
+                    COLUMN_DUE_DATE + " = ?, " + COLUMN_COMPLETED + " = ? WHERE " + COLUMN_ID + " = ?");
+            insertOccurrence = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_TASK_OCCURRENCES +
+                    " (" + COLUMN_TASK_ID + ", " + COLUMN_DUE_DATE + ") VALUES (?, ?)");
+            deleteOccurrence = db.compileStatement("DELETE FROM " + TABLE_TASK_OCCURRENCES + " WHERE " +
+                    COLUMN_TASK_ID + " = ? AND " + COLUMN_DUE_DATE + " = (SELECT " + COLUMN_DUE_DATE +
+                    " FROM " + TABLE_TASKS + " WHERE " + COLUMN_ID + " = ?)");
+        }
+
+        void close() {
+            insert.close();
+            update.close();
+            updateCompleted.close();
+            completeOverdue.close();
+            delete.close();
+            updateOccurrence.close();
+            insertOccurrence.close();
+            deleteOccurrence.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package com.example.ruttasktracker;
+
+import java.util.Arrays;
+
+// Двоичная min-куча пар (срок, id задачи) на примитивных массивах.
+// Добавление и извлечение минимума - O(log n), без упаковки в Long/Integer
+class DeadlineHeap {
+    private long[] dueDates = new long[16];
+    private int[] taskIds = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void push(int taskId, long dueDate) {
+        if (size == dueDates.length) {
+            dueDates = Arrays.copyOf(dueDates, size * 2);
+            taskIds = Arrays.copyOf(taskIds, size * 2);
+        }
+        int index = size++;
+        // Поднимаем новый элемент, пока родитель позже него
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (dueDates[parent] <= dueDate) {
+                break;
+            }
+            dueDates[index] = dueDates[parent];
+            taskIds[index] = taskIds[parent];
+            index = parent;
+        }
+        dueDates[index] = dueDate;
+        taskIds[index] = taskId;
+    }
+
+    // Вызывать только для непустой кучи
+    long peekDueDate() {
+        return dueDates[0];
+    }
+
+    int peekTaskId() {
+        return taskIds[0];
+    }
+
+    void pop() {
+        size--;
+        if (size == 0) {
+            return;
+        }
+        long dueDate = dueDates[size];
+        int taskId = taskIds[size];
+        int index = 0;
+        // Опускаем последний элемент на место корня
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && dueDates[child + 1] < dueDates[child]) {
+                child++;
+            }
+            if (dueDate <= dueDates[child]) {
+                break;
+            }
+            dueDates[index] = dueDates[child];
+            taskIds[index] = taskIds[child];
+            index = child;
+        }
+        dueDates[index] = dueDate;
+        taskIds[index] = taskId;
+    }
+}
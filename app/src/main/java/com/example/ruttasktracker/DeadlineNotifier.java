@@ -0,0 +1,165 @@
+package com.example.ruttasktracker;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Уведомления об истекших сроках. События приходят из DeadlineScheduler в момент
+// истечения, по куче сроков, без обхода таблицы. Все, что истекло за coalesceMs после
+// первого события, уходит одним сводным уведомлением. Между уведомлениями проходит
+// не меньше minIntervalMs; истекшее за это время попадает в следующую сводку.
+// Поэтому за время T публикуется не больше 1 + T / minIntervalMs уведомлений, сколько
+// бы задач ни истекло, а в шторке одновременно не больше MAX_SHOWN.
+// Сроки, истекшие больше MAX_EVENT_AGE_MS назад (старые задачи из выгрузки, долгий
+// простой устройства), не уведомляются
+class DeadlineNotifier implements TaskCache.OverdueListener {
+    static final long DEFAULT_COALESCE_MS = 2_000;
+    static final long DEFAULT_MIN_INTERVAL_MS = 30_000;
+    static final long MAX_EVENT_AGE_MS = TimeUnit.DAYS.toMillis(1);
+    // Названий в сводке; остальные задачи только считаются
+    static final int MAX_TITLES = 5;
+    // Уведомления переиспользуют по кругу столько id
+    static final int MAX_SHOWN = 3;
+    private static final int FIRST_NOTIFICATION_ID = 1000;
+
+    // Поток записи TaskRepository, в нем же приходят события
+    private final ScheduledExecutorService executor;
+    private final Poster poster;
+    private final long coalesceMs;
+    private final long minIntervalMs;
+
+    // Доступ под this
+    private final List<String> titles = new ArrayList<>(MAX_TITLES);
+    private int pendingCount;
+    private long nextPostAllowedAt;
+    private int postedCount;
+    private ScheduledFuture<?> scheduledPost;
+
+    DeadlineNotifier(ScheduledExecutorService executor, Poster poster, long coalesceMs, long minIntervalMs) {
+        this.executor = executor;
+        this.poster = poster;
+        this.coalesceMs = coalesceMs;
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    @Override
+    public void onOverdue(Task task, long dueDate) {
+        long now = System.currentTimeMillis();
+        if (now - dueDate > MAX_EVENT_AGE_MS) {
+            return;
+        }
+        synchronized (this) {
+            if (titles.size() < MAX_TITLES) {
+                titles.add(task.getTitle());
+            }
+            pendingCount++;
+            if (scheduledPost == null) {
+                long delay = Math.max(coalesceMs, nextPostAllowedAt - now);
+                scheduledPost = executor.schedule(this::post, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Публикует накопленное сразу, без ожидания окна и интервала. Для DeadlineWorker:
+    // процесс, запущенный ради проверки сроков, может завершиться раньше, чем окно истечет
+    Future<?> flush() {
+        return executor.submit(this::post);
+    }
+
+    private void post() {
+        int count;
+        List<String> batch;
+        int notificationId;
+        synchronized (this) {
+            if (scheduledPost != null) {
+                scheduledPost.cancel(false);
+                scheduledPost = null;
+            }
+            if (pendingCount == 0) {
+                return;
+            }
+            count = pendingCount;
+            batch = new ArrayList<>(titles);
+            pendingCount = 0;
+            titles.clear();
+            nextPostAllowedAt = System.currentTimeMillis() + minIntervalMs;
+            notificationId = FIRST_NOTIFICATION_ID + postedCount++ % MAX_SHOWN;
+        }
+        long start = Metrics.NOTIFY_DEADLINES.begin();
+        try {
+            poster.post(notificationId, count, batch);
+        } finally {
+            Metrics.NOTIFY_DEADLINES.end(start, count);
+        }
+    }
+
+    // titles - названия первых задач сводки, не больше MAX_TITLES
+    interface Poster {
+        void post(int notificationId, int taskCount, List<String> titles);
+    }
+
+    // Публикация через NotificationManager. Без разрешения POST_NOTIFICATIONS
+    // (Android 13+) уведомления молча пропускаются
+    static final class SystemPoster implements Poster {
+        private static final String CHANNEL_ID = "deadlines";
+        private static final String GROUP_KEY = "com.example.ruttasktracker.DEADLINES";
+
+        private final Context context;
+        private final NotificationManager manager;
+
+        SystemPoster(Context context) {
+            this.context = context.getApplicationContext();
+            manager = this.context.getSystemService(NotificationManager.class);
+            // Повторное создание существующего канала ничего не меняет
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "Сроки задач",
+                    NotificationManager.IMPORTANCE_DEFAULT));
+        }
+
+        @Override
+        public void post(int notificationId, int taskCount, List<String> titles) {
+            if (!manager.areNotificationsEnabled()) {
+                return;
+            }
+            PendingIntent open = PendingIntent.getActivity(context, 0,
+                    new Intent(context, MainActivity.class), PendingIntent.FLAG_IMMUTABLE);
+            Notification.Builder builder = new Notification.Builder(context, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_notification)
+                    .setContentIntent(open)
+                    .setAutoCancel(true)
+                    .setGroup(GROUP_KEY);
+            if (taskCount == 1) {
+                builder.setContentTitle("Срок задачи истек")
+                        .setContentText(titleOf(titles.get(0)));
+            } else {
+                Notification.InboxStyle style = new Notification.InboxStyle();
+                StringBuilder text = new StringBuilder();
+                for (String title : titles) {
+                    style.addLine(titleOf(title));
+                    text.append(text.length() == 0 ? "" : ", ").append(titleOf(title));
+                }
+                if (taskCount > titles.size()) {
+                    style.setSummaryText("и еще " + (taskCount - titles.size()));
+                }
+                builder.setContentTitle("Истек срок задач: " + taskCount)
+                        .setContentText(text)
+                        .setNumber(taskCount)
+                        .setStyle(style);
+            }
+            manager.notify(notificationId, builder.build());
+        }
+
+        private static String titleOf(String title) {
+            return title == null || title.isEmpty() ? "Без названия" : title;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.ruttasktracker;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Следит за сроками активных задач. Вместо опроса всего списка держит min-кучу
+// (срок, id) и один таймер на ближайший срок; когда он срабатывает, истекшие задачи
+// отмечаются выполненными одной транзакцией. Повторяющаяся задача вместо этого переходит
+// к следующему повторению и снова попадает в кучу - в ней всегда один срок на задачу.
+// Все методы вызываются в потоке записи TaskRepository, поэтому синхронизация не нужна
+class DeadlineScheduler {
+    private final TaskCache taskCache;
+    private final ScheduledExecutorService executor;
+    private final Runnable onTasksExpired;
+    private final NextDeadlineListener nextDeadlineListener;
+    // Каждая истекшая задача, например для уведомления
+    private final TaskCache.OverdueListener overdueListener;
+
+    private final DeadlineHeap heap = new DeadlineHeap();
+    // Актуальный срок каждой активной задачи. Запись в куче, срок которой здесь
+    // не совпадает, устарела (задачу изменили или удалили) и пропускается
+    private final Map<Integer, Long> dueDates = new HashMap<>();
+
+    private ScheduledFuture<?> timer;
+    private long timerDueDate = Long.MAX_VALUE;
+
+    DeadlineScheduler(TaskCache taskCache, ScheduledExecutorService executor,
+                      Runnable onTasksExpired, NextDeadlineListener nextDeadlineListener,
+                      TaskCache.OverdueListener overdueListener) {
+        this.taskCache = taskCache;
+        this.executor = executor;
+        this.onTasksExpired = onTasksExpired;
+        this.nextDeadlineListener = nextDeadlineListener;
+        this.overdueListener = overdueListener;
+    }
+
+    void start() {
+        long now = System.currentTimeMillis();
+        // Сроки, истекшие пока приложение не работало, закрываются одним UPDATE
+        if (taskCache.completeOverdueTasks(now, overdueListener) > 0) {
+            onTasksExpired.run();
+        }
+        dueDates.clear();
+        heap.clear();
+        taskCache.readActiveDeadlines(now, this::track);
+        reschedule();
+    }
+
+    void onTaskSaved(int taskId, long dueDate, boolean completed) {
+        if (completed) {
+            dueDates.remove(taskId);
+        } else {
+            track(taskId, dueDate);
+        }
+        checkDeadlines();
+    }
+
+    void onTaskDeleted(int taskId) {
+        dueDates.remove(taskId);
+    }
+
+    // Обрабатывает все истекшие сроки и переставляет таймер на следующий
+    void checkDeadlines() {
+        long start = Metrics.DEADLINES_CHECK.begin();
+        int count = 0;
+        try {
+            count = completeExpired();
+        } finally {
+            Metrics.DEADLINES_CHECK.end(start, count);
+        }
+        reschedule();
+    }
+
+    // Возвращает число истекших задач
+    private int completeExpired() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        while (!heap.isEmpty() && heap.peekDueDate() < now) {
+            int taskId = heap.peekTaskId();
+            long dueDate = heap.peekDueDate();
+            heap.pop();
+            if (isCurrent(taskId, dueDate)) {
+                dueDates.remove(taskId);
+                count++;
+            }
+        }
+        if (count > 0) {
+            // В куче все активные сроки, поэтому истекли ровно те задачи, что просрочены к now.
+            // Один UPDATE по индексу (completed, due_date) закрывает их все
+            taskCache.completeOverdueTasks(now, this::onOverdue);
+            onTasksExpired.run();
+        }
+        return count;
+    }
+
+    // Повторяющаяся задача перешла к следующему повторению и снова отслеживается
+    private void onOverdue(Task task, long dueDate) {
+        if (!task.isCompleted()) {
+            track(task.getId(), task.getDueDate());
+        }
+        overdueListener.onOverdue(task, dueDate);
+    }
+
+    private void track(int taskId, long dueDate) {
+        Long previous = dueDates.put(taskId, dueDate);
+        if (previous == null || previous != dueDate) {
+            heap.push(taskId, dueDate);
+        }
+        // Устаревшие записи удаляются лениво; если их накопилось много, перестраиваем кучу
+        if (heap.size() > 2 * dueDates.size() + 64) {
+            heap.clear();
+            for (Map.Entry<Integer, Long> entry : dueDates.entrySet()) {
+                heap.push(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // Записей в куче вместе с устаревшими
+    @VisibleForTesting
+    int heapSize() {
+        return heap.size();
+    }
+
+    private boolean isCurrent(int taskId, long dueDate) {
+        Long current = dueDates.get(taskId);
+        return current != null && current == dueDate;
+    }
+
+    private void reschedule() {
+        while (!heap.isEmpty() && !isCurrent(heap.peekTaskId(), heap.peekDueDate())) {
+            heap.pop();
+        }
+        long next = heap.isEmpty() ? Long.MAX_VALUE : heap.peekDueDate();
+        if (next == timerDueDate) {
+            return;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        timerDueDate = next;
+        if (next != Long.MAX_VALUE) {
+            // Задача считается просроченной, когда срок строго меньше текущего времени
+            long delay = Math.max(0, next + 1 - System.currentTimeMillis());
+            timer = executor.schedule(this::onTimer, delay, TimeUnit.MILLISECONDS);
+        }
+        nextDeadlineListener.onNextDeadlineChanged(next);
+    }
+
+    private void onTimer() {
+        timer = null;
+        timerDueDate = Long.MAX_VALUE;
+        checkDeadlines();
+    }
+
+    // Ближайший срок изменился; Long.MAX_VALUE - активных задач не осталось
+    interface NextDeadlineListener {
+        void onNextDeadlineChanged(long dueDate);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteDiskIOException;
+import android.database.sqlite.SQLiteFullException;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Фоновая проверка сроков, когда процесс приложения не запущен. Запланирована
+// на ближайший срок, который известен DeadlineScheduler; WorkManager сохраняет
+// задание между перезапусками процесса.
+// Во время doWork планировщик сам сообщает следующий срок. REPLACE в этот момент
+// отменил бы выполняющееся задание до отправки уведомлений, поэтому срок
+// откладывается и ставится в очередь после doWork через APPEND_OR_REPLACE:
+// новое задание начнется, когда текущее завершится
+public class DeadlineWorker extends Worker {
+    @VisibleForTesting
+    static final String WORK_NAME = "task_deadlines";
+    private static final String TAG = "DeadlineWorker";
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private static final Object lock = new Object();
+    private static boolean running;
+    // Последний срок, сообщенный во время doWork, или NO_DEADLINE
+    private static long deferredDueDate = NO_DEADLINE;
+
+    public DeadlineWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        onWorkStarted();
+        boolean succeeded = false;
+        try {
+            // Все истекшие задачи закрываются в потоке записи репозитория одной транзакцией,
+            // после чего планировщик сообщает следующий срок
+            TaskRepository repository = TaskRepository.getInstance(getApplicationContext());
+            repository.checkDeadlines().get();
+            // Процесс могут завершить сразу после задания, поэтому уведомление не ждет окна
+            repository.flushDeadlineNotifications().get();
+            succeeded = true;
+            return Result.success();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        } catch (ExecutionException e) {
+            if (isTransient(e.getCause())) {
+                Log.w(TAG, "Проверка сроков будет повторена", e.getCause());
+                return Result.retry();
+            }
+            // Повтор с тем же результатом ничего не даст; следующий срок планировщик
+            // назначит при ближайшем запуске приложения
+            Log.e(TAG, "Проверка сроков не выполнена", e.getCause());
+            return Result.failure();
+        } finally {
+            onWorkFinished(getApplicationContext(), succeeded);
+        }
+    }
+
+    // Ошибки, которые проходят сами: база занята другим процессом, диск заполнен или недоступен
+    @VisibleForTesting
+    static boolean isTransient(Throwable error) {
+        return error instanceof SQLiteDatabaseLockedException
+                || error instanceof SQLiteDiskIOException
+                || error instanceof SQLiteFullException;
+    }
+
+    // Планирует проверку на момент dueDate; Long.MAX_VALUE - активных задач нет
+    static void schedule(Context context, long dueDate) {
+        synchronized (lock) {
+            if (running) {
+                deferredDueDate = dueDate;
+                return;
+            }
+        }
+        if (dueDate == Long.MAX_VALUE) {
+            WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+            return;
+        }
+        enqueue(context, dueDate, ExistingWorkPolicy.REPLACE);
+    }
+
+    // Немедленная проверка, например после перезагрузки устройства. Если проверка
+    // уже выполняется, второй не нужно
+    static void runNow(Context context) {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE,
+                OneTimeWorkRequest.from(DeadlineWorker.class));
+    }
+
+    @VisibleForTesting
+    static void onWorkStarted() {
+        synchronized (lock) {
+            running = true;
+            deferredDueDate = NO_DEADLINE;
+        }
+    }
+
+    // Задание еще выполняется, поэтому следующее встает за ним в цепочку.
+    // Long.MAX_VALUE ничего не ставит: текущее задание завершится само.
+    // После неудачи цепочка не продолжается: зависимое задание WorkManager
+    // отменил бы вместе с ним, а при повторе срок будет сообщен заново
+    @VisibleForTesting
+    static void onWorkFinished(Context context, boolean succeeded) {
+        long dueDate;
+        synchronized (lock) {
+            running = false;
+            dueDate = deferredDueDate;
+            deferredDueDate = NO_DEADLINE;
+        }
+        if (succeeded && dueDate != NO_DEADLINE && dueDate != Long.MAX_VALUE) {
+            enqueue(context, dueDate, ExistingWorkPolicy.APPEND_OR_REPLACE);
+        }
+    }
+
+    private static void enqueue(Context context, long dueDate, ExistingWorkPolicy policy) {
+        long delay = Math.max(0, dueDate + 1 - System.currentTimeMillis());
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(DeadlineWorker.class)
+                .setInitialDelay(delay, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, policy, request);
+    }
+}
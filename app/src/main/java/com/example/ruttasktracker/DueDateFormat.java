@@ -0,0 +1,27 @@
+package com.example.ruttasktracker;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// Преобразование срока задачи между epoch millis и строкой "dd.MM.yyyy HH:mm".
+// Используется только на границах: при показе даты и при миграции старой схемы.
+public final class DueDateFormat {
+    public static final String PATTERN = "dd.MM.yyyy HH:mm";
+
+    // SimpleDateFormat не потокобезопасен, поэтому держим по экземпляру на поток
+    private static final ThreadLocal<SimpleDateFormat> FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat(PATTERN, Locale.getDefault()));
+
+    private DueDateFormat() {
+    }
+
+    public static String format(long dueDate) {
+        return FORMAT.get().format(new Date(dueDate));
+    }
+
+    public static long parse(String dueDate) throws ParseException {
+        return FORMAT.get().parse(dueDate).getTime();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.ruttasktracker;
+
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Начало списка задач, сохраненное при уходе с экрана. При холодном старте этот
+// маленький файл читается параллельно с открытием базы, и список появляется раньше,
+// чем база ответит. Первая страница из базы затем заменяет снимок, и DiffUtil
+// меняет только то, что успело измениться.
+// Формат: версия, число задач, затем записи в порядке списка. Файл заменяется
+// переименованием, поэтому при сбое записи остается предыдущий снимок
+final class FirstScreenSnapshot {
+    // Столько же, сколько в первой странице списка
+    static final int SIZE = TaskPager.FIRST_PAGE_SIZE;
+    private static final int FORMAT_VERSION = 1;
+    private static final String TAG = "FirstScreenSnapshot";
+
+    private final File file;
+
+    FirstScreenSnapshot(File file) {
+        this.file = file;
+    }
+
+    // Пустой список, если снимка нет или он не читается
+    @WorkerThread
+    List<Task> read() {
+        long start = Metrics.SNAPSHOT_READ.begin();
+        List<Task> tasks = Collections.emptyList();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return tasks;
+            }
+            int count = Math.min(in.readInt(), SIZE);
+            List<Task> read = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                read.add(readTask(in));
+            }
+            TaskAdapter.prepareForBind(read);
+            tasks = read;
+        } catch (FileNotFoundException e) {
+            // Первый запуск
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Снимок первого экрана не прочитан", e);
+        } finally {
+            Metrics.SNAPSHOT_READ.end(start, tasks.size());
+        }
+        return tasks;
+    }
+
+    // Сохраняет первые SIZE задач списка
+    @WorkerThread
+    void write(List<Task> tasks) {
+        int count = Math.min(tasks.size(), SIZE);
+        long start = Metrics.SNAPSHOT_WRITE.begin();
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    writeTask(out, tasks.get(i));
+                }
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Не удалось заменить " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Снимок первого экрана не сохранен", e);
+            temp.delete();
+        } finally {
+            Metrics.SNAPSHOT_WRITE.end(start, count);
+        }
+    }
+
+    private static Task readTask(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        long dueDate = in.readLong();
+        boolean completed = in.readBoolean();
+        Task task = new Task(readString(in), readString(in), dueDate, completed);
+        task.setId(id);
+        String recurrence = readString(in);
+        if (recurrence != null) {
+            task.setRecurrence(Recurrence.parse(recurrence));
+        }
+        return task;
+    }
+
+    private static void writeTask(DataOutputStream out, Task task) throws IOException {
+        out.writeInt(task.getId());
+        out.writeLong(task.getDueDate());
+        out.writeBoolean(task.isCompleted());
+        writeString(out, task.getTitle());
+        writeString(out, task.getDescription());
+        writeString(out, task.getRecurrence() == null ? null : task.getRecurrence().toString());
+    }
+
+    // Длина в байтах UTF-8 или -1 для null. writeUTF не подходит: он ограничен 64 КБ
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.ruttasktracker;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+// Сервер синхронизации на SQL Server через mssql-jdbc. Соединением владеет вызывающий.
+// Пачка изменений отправляется одним executeBatch - все MERGE уходят на сервер за одно
+// обращение. Версия строки - rowversion, который сервер увеличивает при каждой записи
+final class JdbcSyncRemote implements SyncRemote {
+    // Схема на сервере. У каждого поля свое время изменения, по нему MERGE решает конфликт
+    static final String CREATE_TABLE = "CREATE TABLE tasks (" +
+            "sync_id CHAR(32) NOT NULL PRIMARY KEY, " +
+            "title NVARCHAR(MAX) NULL, title_time BIGINT NOT NULL, " +
+            "description NVARCHAR(MAX) NULL, description_time BIGINT NOT NULL, " +
+            "due_date BIGINT NOT NULL, due_date_time BIGINT NOT NULL, " +
+            "completed BIT NOT NULL, completed_time BIGINT NOT NULL, " +
+            "deleted BIT NOT NULL, deleted_time BIGINT NOT NULL, " +
+            "version ROWVERSION NOT NULL, " +
+            "INDEX idx_tasks_version (version))";
+
+    // Порядок совпадает с номерами полей TaskChange
+    private static final String[] FIELDS = {"title", "description", "due_date", "completed", "deleted"};
+
+    private static final String MERGE = buildMerge();
+    // Строки незавершенных транзакций получают версию раньше, чем видны, поэтому читаем
+    // только версии ниже MIN_ACTIVE_ROWVERSION: иначе watermark перескочил бы через них
+    private static final String PULL = "SELECT TOP (?) sync_id, " +
+            "title, title_time, description, description_time, due_date, due_date_time, " +
+            "completed, completed_time, deleted, deleted_time, CAST(version AS BIGINT) " +
+            "FROM tasks WHERE version > CAST(? AS BINARY(8)) AND version < MIN_ACTIVE_ROWVERSION() " +
+            "ORDER BY version";
+
+    private final Connection connection;
+
+    JdbcSyncRemote(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public void push(List<TaskChange> changes) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement merge = connection.prepareStatement(MERGE)) {
+            for (TaskChange change : changes) {
+                int index = 1;
+                merge.setString(index++, change.syncId);
+                setNullableString(merge, index++, change.title);
+                merge.setLong(index++, change.times[TaskChange.TITLE]);
+                setNullableString(merge, index++, change.description);
+                merge.setLong(index++, change.times[TaskChange.DESCRIPTION]);
+                merge.setLong(index++, change.dueDate);
+                merge.setLong(index++, change.times[TaskChange.DUE_DATE]);
+                merge.setBoolean(index++, change.completed);
+                merge.setLong(index++, change.times[TaskChange.COMPLETED]);
+                merge.setBoolean(index++, change.deleted);
+                merge.setLong(index, change.times[TaskChange.DELETED]);
+                merge.addBatch();
+            }
+            merge.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
+    public List<TaskChange> pull(long watermark, int limit) throws SQLException {
+        List<TaskChange> changes = new ArrayList<>(limit);
+        try (PreparedStatement select = connection.prepareStatement(PULL)) {
+            select.setInt(1, limit);
+            select.setLong(2, watermark);
+            select.setFetchSize(limit);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    TaskChange change = new TaskChange(rows.getString(1));
+                    change.title = rows.getString(2);
+                    change.times[TaskChange.TITLE] = rows.getLong(3);
+                    change.description = rows.getString(4);
+                    change.times[TaskChange.DESCRIPTION] = rows.getLong(5);
+                    change.dueDate = rows.getLong(6);
+                    change.times[TaskChange.DUE_DATE] = rows.getLong(7);
+                    change.completed = rows.getBoolean(8);
+                    change.times[TaskChange.COMPLETED] = rows.getLong(9);
+                    change.deleted = rows.getBoolean(10);
+                    change.times[TaskChange.DELETED] = rows.getLong(11);
+                    change.version = rows.getLong(12);
+                    changes.add(change);
+                }
+            }
+        }
+        return changes;
+    }
+
+    // MERGE берет каждое поле из пачки, только если его время новее, чем на сервере.
+    // Строка без новых полей не обновляется и не получает новую версию
+    private static String buildMerge() {
+        StringBuilder columns = new StringBuilder("sync_id");
+        StringBuilder newer = new StringBuilder();
+        StringBuilder update = new StringBuilder();
+        for (int i = 0; i < FIELDS.length; i++) {
+            String field = FIELDS[i];
+            String isNewer = "s." + field + "_time > t." + field + "_time";
+            columns.append(", ").append(field).append(", ").append(field).append("_time");
+            newer.append(i == 0 ? "" : " OR ").append(isNewer);
+            update.append(i == 0 ? "" : ", ")
+                    .append(field).append(" = CASE WHEN ").append(isNewer)
+                    .append(" THEN s.").append(field).append(" ELSE t.").append(field).append(" END, ")
+                    .append(field).append("_time = CASE WHEN ").append(isNewer)
+                    .append(" THEN s.").append(field).append("_time ELSE t.").append(field).append("_time END");
+        }
+        StringBuilder parameters = new StringBuilder("?");
+        StringBuilder sourceColumns = new StringBuilder("s.sync_id");
+        for (String field : FIELDS) {
+            parameters.append(", ?, ?");
+            sourceColumns.append(", s.").append(field).append(", s.").append(field).append("_time");
+        }
+        return "MERGE INTO tasks WITH (HOLDLOCK) AS t " +
+                "USING (VALUES (" + parameters + ")) AS s (" + columns + ") " +
+                "ON t.sync_id = s.sync_id " +
+                "WHEN MATCHED AND (" + newer + ") THEN UPDATE SET " + update + " " +
+                "WHEN NOT MATCHED THEN INSERT (" + columns + ") VALUES (" + sourceColumns + ");";
+    }
+
+    private static void setNullableString(PreparedStatement statement, int index, String value)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NVARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+}
@@ -1,105 +1,287 @@
 package com.example.ruttasktracker;
 
+import android.Manifest;
 import android.app.DatePickerDialog;
 import android.app.TimePickerDialog;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
+    private static final int SEARCH_LIMIT = 200;
+    // Поиск запускается, когда пользователь перестал печатать
+    private static final long SEARCH_DELAY_MS = 150;
+    private static final int REQUEST_NOTIFICATIONS = 1;
+    // Пункты списка "Повтор" в диалоге задачи; null - задача не повторяется
+    private static final Recurrence.Frequency[] REPEAT_FREQUENCIES = {null,
+            Recurrence.Frequency.DAILY, Recurrence.Frequency.WEEKLY, Recurrence.Frequency.MONTHLY};
+    private static final String[] REPEAT_LABELS = {"Не повторять", "Каждый день", "Каждую неделю", "Каждый месяц"};
 
     private RecyclerView recyclerView;
     private TaskAdapter taskAdapter;
-    private DatabaseHelper dbHelper;
-    private List<Task> taskList;
-    private String selectedDueDate;
-
-    private Handler handler = new Handler(Looper.getMainLooper());
-    private Runnable updateTaskStatusRunnable = new Runnable() {
-        @Override
-        public void run() {
-            checkTaskStatus();
-            handler.postDelayed(this, 60000); // Проверка каждую минуту
-       }
-    };
+    private TaskRepository repository;
+    private TaskPager taskPager;
+    private TextView txtSummaryCounts, txtSummaryDue;
+    // Сводка перечитывается после каждой записи, как и окно списка
+    private final TaskRepository.InvalidationListener summaryListener = this::loadSummary;
+    private long selectedDueDate;
+
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::runSearch;
+    private String searchQuery = "";
+    // Последний список, переданный адаптеру. getCurrentList отстает, пока DiffUtil
+    // считает разницу, поэтому переключения строятся от этого списка
+    private List<Task> shownTasks = Collections.emptyList();
+    // Окно из базы уже показано; снимок первого экрана после этого не нужен
+    private boolean pageShown;
+    // Ответы на устаревшие запросы поиска отбрасываются
+    private int searchGeneration;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        dbHelper = new DatabaseHelper(this);
+        repository = TaskRepository.getInstance(this);
 
         recyclerView = findViewById(R.id.recyclerView);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        taskAdapter = new TaskAdapter(this, this::onTaskStatusChanged,
+                this::deleteTask, this::showEditTaskDialog);
+        recyclerView.setAdapter(taskAdapter);
+        recyclerView.addItemDecoration(new TaskSectionDecoration(this, taskAdapter));
 
         findViewById(R.id.btnAddTask).setOnClickListener(v -> showAddTaskDialog());
 
-        loadTasks();
+        // Список загружается в фоне страницами, экран только отображает текущее окно
+        taskPager = repository.createPager();
+        taskPager.getWindow().observe(this, this::showTasks);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) view.getLayoutManager();
+                int first = layoutManager.findFirstVisibleItemPosition();
+                int last = layoutManager.findLastVisibleItemPosition();
+                taskAdapter.onScrolled(first, last, dy);
+                if (!searchQuery.isEmpty()) {
+                    return;
+                }
+                taskPager.onScrolled(first, last);
+            }
+        });
+        taskPager.refresh();
+
+        txtSummaryCounts = findViewById(R.id.tvSummaryCounts);
+        txtSummaryDue = findViewById(R.id.tvSummaryDue);
+        repository.addInvalidationListener(summaryListener);
+        // Снимок с прошлого запуска виден, пока база не ответила
+        repository.loadFirstScreen(this::showFirstScreen);
+        requestNotificationPermission();
+
+        EditText edtSearch = findViewById(R.id.edtSearch);
+        edtSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                onSearchQueryChanged(s.toString().trim());
+            }
+        });
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        handler.post(updateTaskStatusRunnable); // Начать обновление статуса задач, когда активен экран
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacks(searchRunnable);
+        repository.removeInvalidationListener(taskPager);
+        repository.removeInvalidationListener(summaryListener);
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        handler.removeCallbacks(updateTaskStatusRunnable); // Остановить обновление, когда экран не активен
+        // Отложенные отметки пишутся сразу: после onPause процесс могут завершить
+        repository.flushPendingWrites();
     }
 
-    private void loadTasks() {
-        taskList = dbHelper.getAllTasks();
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (searchQuery.isEmpty() && taskPager.isAtStart()) {
+            repository.saveFirstScreen(shownTasks);
+        }
+    }
 
-        // Сортировка задач
-        SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
-        Collections.sort(taskList, (task1, task2) -> {
-            try {
-                Date date1 = dateFormat.parse(task1.getDueDate());
-                Date date2 = dateFormat.parse(task2.getDueDate());
-                boolean isTask1Overdue = date1.before(new Date()) || task1.isCompleted();
-                boolean isTask2Overdue = date2.before(new Date()) || task2.isCompleted();
-
-                // Задачи с актуальными сроками идут вверх
-                if (isTask1Overdue && !isTask2Overdue) return 1;
-                if (!isTask1Overdue && isTask2Overdue) return -1;
-
-                // Сортировка по дате
-                return date1.compareTo(date2);
-            } catch (ParseException e) {
-                e.printStackTrace();
-                return 0;
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Сроки отслеживает DeadlineScheduler; здесь только догоняем время, проведенное во сне
+        repository.checkDeadlines();
+        // "Сегодня" и "на неделе" зависят от времени, а не только от записей
+        loadSummary();
+    }
+
+    private void loadSummary() {
+        repository.loadSummary(this::showSummary);
+    }
+
+    private void showSummary(TaskSummary summary) {
+        txtSummaryCounts.setText("Активных: " + summary.active + " · Просрочено: " + summary.overdue
+                + " · Выполнено: " + summary.completed);
+        txtSummaryDue.setText("Сегодня: " + summary.dueToday + " · На этой неделе: " + summary.dueThisWeek);
+    }
+
+    // Уведомления об истекших сроках (DeadlineNotifier) на Android 13+ требуют разрешения
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQUEST_NOTIFICATIONS);
+        }
+    }
+
+    private void showTasks(List<Task> tasks) {
+        if (!searchQuery.isEmpty()) {
+            // Окно обновляется после каждой записи - результаты поиска тоже нужно перечитать
+            runSearch();
+            return;
+        }
+        long start = Metrics.UI_SHOW_TASKS.begin();
+        try {
+            // Задачи приходят из базы уже отсортированными. Адаптер сам вычислит, какие элементы изменились
+            taskAdapter.setSectionsShown(true, taskPager.isAtStart());
+            if (pageShown) {
+                submitTasks(tasks);
+            } else {
+                pageShown = true;
+                shownTasks = tasks;
+                // Строки появляются, когда адаптер применит разницу со снимком
+                taskAdapter.submitList(tasks, () -> onFirstPageShown(tasks.size()));
+            }
+        } finally {
+            Metrics.UI_SHOW_TASKS.end(start, tasks.size());
+        }
+    }
+
+    private void showFirstScreen(List<Task> tasks) {
+        if (pageShown || tasks.isEmpty() || !searchQuery.isEmpty()) {
+            return;
+        }
+        // Снимок - начало списка
+        taskAdapter.setSectionsShown(true, true);
+        submitTasks(tasks);
+        StartupTrace.mark(StartupTrace.Stage.SNAPSHOT_SHOWN, tasks.size());
+    }
+
+    // Отметки времени до первого кадра с задачами из базы. reportFullyDrawn
+    // отдает то же время системе (строка Fully drawn в logcat)
+    private void onFirstPageShown(int taskCount) {
+        if (StartupTrace.isMarked(StartupTrace.Stage.FIRST_PAGE_SHOWN)) {
+            return;
+        }
+        StartupTrace.mark(StartupTrace.Stage.FIRST_PAGE_SHOWN, taskCount);
+        ViewTreeObserver observer = recyclerView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                StartupTrace.mark(StartupTrace.Stage.FIRST_DRAW, taskCount);
+                reportFullyDrawn();
+                return true;
             }
         });
+    }
 
-        // Обновляем адаптер, передавая все необходимые слушатели
-        taskAdapter = new TaskAdapter(this, taskList, this::onTaskStatusChanged,
-                this::deleteTask, this::showEditTaskDialog);
-        recyclerView.setAdapter(taskAdapter);
+    // Снимок метрик: adb shell dumpsys activity com.example.ruttasktracker/.MainActivity
+    // С аргументом --log снимок дублируется в logcat, с --file - в files/metrics.txt
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd,
+                     @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.println(prefix + "Metrics:");
+        Metrics.dump(writer);
+        List<String> options = args == null ? Collections.emptyList() : Arrays.asList(args);
+        if (options.contains("--log")) {
+            Metrics.dumpToLog();
+        }
+        if (options.contains("--file")) {
+            File file = new File(getFilesDir(), "metrics.txt");
+            try {
+                Metrics.dumpToFile(file);
+                writer.println(prefix + "Записано в " + file);
+            } catch (IOException e) {
+                writer.println(prefix + "Не удалось записать " + file + ": " + e);
+            }
+        }
+    }
+
+    private void onSearchQueryChanged(String query) {
+        if (query.equals(searchQuery)) {
+            return;
+        }
+        searchQuery = query;
+        searchHandler.removeCallbacks(searchRunnable);
+        if (query.isEmpty()) {
+            // Возвращаемся к основному списку
+            searchGeneration++;
+            List<Task> window = taskPager.getWindow().getValue();
+            taskAdapter.setSectionsShown(true, taskPager.isAtStart());
+            submitTasks(window == null ? Collections.emptyList() : window);
+        } else {
+            searchHandler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+        }
+    }
+
+    private void runSearch() {
+        int generation = ++searchGeneration;
+        repository.search(searchQuery, SEARCH_LIMIT, tasks -> {
+            if (generation == searchGeneration) {
+                taskAdapter.setSectionsShown(false, false);
+                submitTasks(tasks);
+            }
+        });
     }
 
     private void showAddTaskDialog() {
         View dialogView = getLayoutInflater().inflate(R.layout.dialog_add_task, null);
         EditText edtTitle = dialogView.findViewById(R.id.edtTitle);
         EditText edtDescription = dialogView.findViewById(R.id.edtDescription);
+        Spinner spnRepeat = dialogView.findViewById(R.id.spnRepeat);
+        EditText edtRepeatCount = dialogView.findViewById(R.id.edtRepeatCount);
+        setUpRepeat(spnRepeat, edtRepeatCount, null);
 
         AlertDialog dialog = new AlertDialog.Builder(this)
                 .setTitle("Добавить задачу")
@@ -130,8 +312,7 @@ public class MainActivity extends AppCompatActivity {
                                         calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
                                         calendar.set(Calendar.MINUTE, minute);
 
-                                        SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
-                                        selectedDueDate = dateFormat.format(calendar.getTime());
+                                        selectedDueDate = calendar.getTimeInMillis();
 
                                         String title = edtTitle.getText().toString().trim();
                                         String description = edtDescription.getText().toString().trim();
@@ -140,8 +321,8 @@ public class MainActivity extends AppCompatActivity {
                                             Toast.makeText(this, "Заполните все поля", Toast.LENGTH_SHORT).show();
                                         } else {
                                             Task task = new Task(title, description, selectedDueDate, false);
-                                            dbHelper.addTask(task);
-                                            loadTasks();
+                                            task.setRecurrence(readRecurrence(spnRepeat, edtRepeatCount, selectedDueDate));
+                                            repository.addTask(task);
                                             dialog.dismiss();
                                         }
                                     }
@@ -163,10 +344,56 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    private void setUpRepeat(Spinner spnRepeat, EditText edtRepeatCount, Recurrence recurrence) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
+                android.R.layout.simple_spinner_item, REPEAT_LABELS);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spnRepeat.setAdapter(adapter);
+        if (recurrence != null) {
+            spnRepeat.setSelection(Arrays.asList(REPEAT_FREQUENCIES).indexOf(recurrence.getFrequency()));
+            if (recurrence.getCount() > 0) {
+                edtRepeatCount.setText(String.valueOf(recurrence.getCount()));
+            }
+        }
+    }
+
+    // Первое повторение - сам выбранный срок
+    private static Recurrence readRecurrence(Spinner spnRepeat, EditText edtRepeatCount, long dueDate) {
+        Recurrence.Frequency frequency = REPEAT_FREQUENCIES[spnRepeat.getSelectedItemPosition()];
+        if (frequency == null) {
+            return null;
+        }
+        int count;
+        try {
+            String text = edtRepeatCount.getText().toString().trim();
+            count = text.isEmpty() ? 0 : Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            // Поле принимает только цифры; слишком большое число - то же, что без ограничения
+            count = 0;
+        }
+        return new Recurrence(frequency, 1, dueDate, count, 0);
+    }
+
+    private void submitTasks(List<Task> tasks) {
+        shownTasks = tasks;
+        taskAdapter.submitList(tasks);
+    }
+
+    // Переключение видно сразу: адаптер получает список с измененной копией задачи,
+    // а в базу отметка уходит позже вместе с соседними переключениями.
+    // Задачи из списка адаптера не изменяются на месте
     private void onTaskStatusChanged(Task task, boolean isChecked) {
-        task.setCompleted(isChecked);
-        dbHelper.updateTask(task);
-        loadTasks();
+        List<Task> tasks = new ArrayList<>(shownTasks);
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).getId() == task.getId()) {
+                Task updated = new Task(tasks.get(i));
+                updated.setCompleted(isChecked);
+                tasks.set(i, updated);
+                break;
+            }
+        }
+        submitTasks(tasks);
+        repository.setCompleted(task, isChecked);
     }
 
     private void showEditTaskDialog(Task task) {
@@ -174,8 +401,12 @@ public class MainActivity extends AppCompatActivity {
         EditText edtTitle = dialogView.findViewById(R.id.edtTitle);
         EditText edtDescription = dialogView.findViewById(R.id.edtDescription);
 
+        Spinner spnRepeat = dialogView.findViewById(R.id.spnRepeat);
+        EditText edtRepeatCount = dialogView.findViewById(R.id.edtRepeatCount);
+
         edtTitle.setText(task.getTitle());
         edtDescription.setText(task.getDescription());
+        setUpRepeat(spnRepeat, edtRepeatCount, task.getRecurrence());
 
         AlertDialog dialog = new AlertDialog.Builder(this)
                 .setTitle("Редактировать задачу")
@@ -199,8 +430,7 @@ public class MainActivity extends AppCompatActivity {
                                     calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
                                     calendar.set(Calendar.MINUTE, minute);
 
-                                    SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
-                                    selectedDueDate = dateFormat.format(calendar.getTime());
+                                    selectedDueDate = calendar.getTimeInMillis();
 
                                     String title = edtTitle.getText().toString().trim();
                                     String description = edtDescription.getText().toString().trim();
@@ -208,11 +438,13 @@ public class MainActivity extends AppCompatActivity {
                                     if (title.isEmpty() || description.isEmpty()) {
                                         Toast.makeText(this, "Заполните все поля", Toast.LENGTH_SHORT).show();
                                     } else {
-                                        task.setTitle(title);
-                                        task.setDescription(description);
-                                        task.setDueDate(selectedDueDate);
-                                        dbHelper.updateTask(task);
-                                        loadTasks();
+                                        Task updated = new Task(task);
+                                        updated.setTitle(title);
+                                        updated.setDescription(description);
+                                        updated.setDueDate(selectedDueDate);
+                                        // Правило отсчитывается заново от выбранного срока
+                                        updated.setRecurrence(readRecurrence(spnRepeat, edtRepeatCount, selectedDueDate));
+                                        repository.updateTask(updated);
                                         dialog.dismiss();
                                     }
                                 },
@@ -233,24 +465,6 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void deleteTask(Task task) {
-        dbHelper.deleteTask(task.getId()); // Передаем id задачи вместо объекта Task
-        loadTasks();
-    }
-
-    // Метод для проверки задач на просроченность и изменения их статуса
-    private void checkTaskStatus() {
-        SimpleDateFormat dateFormatForCheck = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
-        for (Task task : taskList) {
-            try {
-                Date dueDate = dateFormatForCheck.parse(task.getDueDate());
-                if (dueDate != null && dueDate.before(new Date()) && !task.isCompleted()) {
-                    task.setCompleted(true);
-                    dbHelper.updateTask(task); // Обновляем статус задачи в базе данных
-                    loadTasks();
-                }
-            } catch (ParseException e) {
-                e.printStackTrace();
-            }
-        }
+        repository.deleteTask(task);
     }
-}
\ No newline at end of file
+}
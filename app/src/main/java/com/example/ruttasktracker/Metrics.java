@@ -0,0 +1,216 @@
+package com.example.ruttasktracker;
+
+import android.os.Looper;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счетчики и гистограммы задержек для горячих путей. Каждый участок размечается
+// так, чтобы он был виден и в снимке метрик, и в трассе systrace/Perfetto:
+//
+//     long start = Metrics.DB_ADD_TASK.begin();
+//     try { ... } finally { Metrics.DB_ADD_TASK.end(start, rows); }
+//
+// Запись события не блокирует и не выделяет память: только атомарные счетчики
+final class Metrics {
+    private static final String TAG = "Metrics";
+
+    private static final List<Operation> operations = new ArrayList<>();
+
+    static final Operation DB_OPEN = register("db.open");
+    static final Operation DB_ADD_TASK = register("db.addTask");
+    static final Operation DB_ADD_TASKS = register("db.addTasks");
+    static final Operation DB_GET_ALL_TASKS = register("db.getAllTasks");
+    static final Operation DB_READ_ALL_TASKS = register("db.readAllTasks");
+    static final Operation DB_GET_TASKS_ORDERED = register("db.getTasksOrdered");
+    static final Operation DB_GET_TASKS_AFTER = register("db.getTasksAfter");
+    static final Operation DB_GET_TASKS_BEFORE = register("db.getTasksBefore");
+    static final Operation DB_SEARCH = register("db.search");
+    static final Operation DB_READ_DESCRIPTIONS = register("db.readDescriptions");
+    static final Operation DB_READ_ACTIVE_DEADLINES = register("db.readActiveDeadlines");
+    static final Operation DB_UPDATE_TASK = register("db.updateTask");
+    static final Operation DB_UPDATE_COMPLETED = register("db.updateCompleted");
+    static final Operation DB_COMPLETE_OVERDUE = register("db.completeOverdueTasks");
+    static final Operation DB_DELETE_TASK = register("db.deleteTask");
+    static final Operation DB_DELETE_TASKS = register("db.deleteTasks");
+    static final Operation DB_ARCHIVE_TASKS = register("db.archiveTasks");
+    static final Operation DB_GET_ARCHIVED_TASKS = register("db.getArchivedTasks");
+    static final Operation DB_COMPACT = register("db.compact");
+    static final Operation DB_GET_OCCURRENCES = register("db.getOccurrences");
+    static final Operation DB_GET_SUMMARY = register("db.getSummary");
+    static final Operation DB_READ_PENDING_CHANGES = register("db.readPendingChanges");
+    static final Operation DB_APPLY_REMOTE_CHANGES = register("db.applyRemoteChanges");
+    // Загрузка страницы списка (раньше MainActivity.loadTasks)
+    static final Operation PAGER_LOAD = register("pager.load");
+    // Проверка сроков (раньше MainActivity.checkTaskStatus)
+    static final Operation DEADLINES_CHECK = register("deadlines.check");
+    static final Operation NOTIFY_DEADLINES = register("notify.deadlines");
+    static final Operation BACKUP_EXPORT = register("backup.export");
+    static final Operation BACKUP_IMPORT = register("backup.import");
+    static final Operation SYNC_PUSH = register("sync.push");
+    static final Operation SYNC_PULL = register("sync.pull");
+    static final Operation UI_SHOW_TASKS = register("ui.showTasks");
+    static final Operation UI_BIND = register("ui.bindTask");
+    static final Operation UI_PRECOMPUTE_TEXT = register("ui.precomputeText");
+    static final Operation SNAPSHOT_READ = register("snapshot.read");
+    static final Operation SNAPSHOT_WRITE = register("snapshot.write");
+    // От запуска процесса до первой отрисовки списка с задачами из базы (см. StartupTrace)
+    static final Operation STARTUP_FIRST_DRAW = register("startup.firstDraw");
+
+    private Metrics() {
+    }
+
+    private static Operation register(String name) {
+        Operation operation = new Operation(name);
+        operations.add(operation);
+        return operation;
+    }
+
+    // Снимок всех метрик, по строке на операцию
+    static void dump(PrintWriter writer) {
+        writer.println(Operation.HEADER);
+        for (Operation operation : operations) {
+            if (operation.count.sum() > 0) {
+                writer.println(operation.format());
+            }
+        }
+        writer.flush();
+    }
+
+    static void dumpToLog() {
+        Log.i(TAG, Operation.HEADER);
+        for (Operation operation : operations) {
+            if (operation.count.sum() > 0) {
+                Log.i(TAG, operation.format());
+            }
+        }
+    }
+
+    static void dumpToFile(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            dump(writer);
+        }
+    }
+
+    static void reset() {
+        for (Operation operation : operations) {
+            operation.reset();
+        }
+    }
+
+    static final class Operation {
+        static final String HEADER = "operation count rows p50_us p95_us p99_us max_us main_thread_ms";
+
+        // Логарифмические корзины: 4 корзины на каждую степень двойки, точность около 25%
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1);
+
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder mainThreadNanos = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        long begin() {
+            Trace.beginSection(name);
+            return System.nanoTime();
+        }
+
+        // Вызывается в том же потоке, что и begin
+        void end(long startNanos, long rowCount) {
+            long elapsed = System.nanoTime() - startNanos;
+            Trace.endSection();
+            count.increment();
+            rows.add(rowCount);
+            buckets.incrementAndGet(bucketOf(elapsed));
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mainThreadNanos.add(elapsed);
+            }
+        }
+
+        // Для интервалов, начало которых отмечено не через begin, например запуск процесса
+        void record(long elapsedNanos, long rowCount) {
+            count.increment();
+            rows.add(rowCount);
+            buckets.incrementAndGet(bucketOf(elapsedNanos));
+        }
+
+        private void reset() {
+            count.reset();
+            rows.reset();
+            mainThreadNanos.reset();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) Math.max(nanos, 0);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+        }
+
+        // Верхняя граница корзины; процентили поэтому оцениваются с запасом
+        static long bucketUpperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+            return lower + width - 1;
+        }
+
+        private String format() {
+            long[] counts = new long[BUCKET_COUNT];
+            long total = 0;
+            int maxBucket = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+                if (counts[i] > 0) {
+                    maxBucket = i;
+                }
+            }
+            return String.format(Locale.US, "%s %d %d %.1f %.1f %.1f %.1f %.1f",
+                    name, count.sum(), rows.sum(),
+                    percentile(counts, total, 0.50) / 1e3,
+                    percentile(counts, total, 0.95) / 1e3,
+                    percentile(counts, total, 0.99) / 1e3,
+                    bucketUpperBound(maxBucket) / 1e3,
+                    mainThreadNanos.sum() / 1e6);
+        }
+
+        private static long percentile(long[] counts, long total, double fraction) {
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
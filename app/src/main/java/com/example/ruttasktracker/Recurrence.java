@@ -0,0 +1,219 @@
+package com.example.ruttasktracker;
+
+import java.util.Calendar;
+import java.util.Objects;
+
+// Правило повторения задачи: каждые interval дней, недель или месяцев начиная со start,
+// с необязательным ограничением по числу повторений (count) или по дате (until).
+// Повторения не хранятся: любое из них вычисляется по номеру. Шаг считается по
+// календарю в часовом поясе устройства, поэтому время суток сохраняется при переходе
+// на летнее время, а 31-е число в коротком месяце становится последним днем месяца.
+// В базе правило хранится строкой в духе RRULE: "FREQ=WEEKLY;INTERVAL=1;DTSTART=...;COUNT=10"
+public final class Recurrence {
+    public enum Frequency {
+        DAILY(Calendar.DAY_OF_MONTH, 24 * 60 * 60 * 1000L, "ежедневно"),
+        WEEKLY(Calendar.WEEK_OF_YEAR, 7 * 24 * 60 * 60 * 1000L, "еженедельно"),
+        MONTHLY(Calendar.MONTH, 30 * 24 * 60 * 60 * 1000L, "ежемесячно");
+
+        final int calendarField;
+        // Примерная длина шага, только чтобы сразу попасть рядом с нужным номером
+        final long approximateMillis;
+        final String label;
+
+        Frequency(int calendarField, long approximateMillis, String label) {
+            this.calendarField = calendarField;
+            this.approximateMillis = approximateMillis;
+            this.label = label;
+        }
+    }
+
+    // Повторений больше нет
+    public static final long NONE = Long.MAX_VALUE;
+
+    private final Frequency frequency;
+    private final int interval;
+    private final long start;
+    // 0 - без ограничения
+    private final int count;
+    private final long until;
+
+    public Recurrence(Frequency frequency, int interval, long start, int count, long until) {
+        if (interval < 1 || count < 0) {
+            throw new IllegalArgumentException("interval = " + interval + ", count = " + count);
+        }
+        this.frequency = frequency;
+        this.interval = interval;
+        this.start = start;
+        this.count = count;
+        this.until = until;
+    }
+
+    public Frequency getFrequency() {
+        return frequency;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getUntil() {
+        return until;
+    }
+
+    // Повторение с номером index (с нуля) или NONE, если правило до него не доходит
+    public long occurrence(int index) {
+        if (index < 0 || (count > 0 && index >= count)) {
+            return NONE;
+        }
+        long time;
+        if (index == 0) {
+            time = start;
+        } else {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(start);
+            calendar.add(frequency.calendarField, index * interval);
+            time = calendar.getTimeInMillis();
+        }
+        return until > 0 && time > until ? NONE : time;
+    }
+
+    // Первое повторение строго после time или NONE
+    public long occurrenceAfter(long time) {
+        if (time < start) {
+            return occurrence(0);
+        }
+        long estimate = (time - start) / (frequency.approximateMillis * interval);
+        int index = (int) Math.min(estimate, Integer.MAX_VALUE - 2);
+        // Оценка может ошибиться на несколько шагов в обе стороны
+        while (index > 0 && occurrenceOrLater(index - 1) > time) {
+            index--;
+        }
+        while (occurrenceOrLater(index) <= time) {
+            index++;
+        }
+        return occurrence(index);
+    }
+
+    // Срок, на который переходит задача, когда ее текущее повторение dueDate
+    // выполнено или истекло к моменту now: ближайшее повторение позже обоих
+    public long nextDueDate(long dueDate, long now) {
+        return occurrenceAfter(Math.max(dueDate, now - 1));
+    }
+
+    // Повторения в интервале [from, to) по возрастанию, не больше limit
+    public int occurrencesBetween(long from, long to, int limit, OccurrenceConsumer consumer) {
+        int produced = 0;
+        long time = occurrenceAfter(from - 1);
+        while (time != NONE && time < to && produced < limit) {
+            consumer.accept(time);
+            produced++;
+            time = occurrenceAfter(time);
+        }
+        return produced;
+    }
+
+    // Без учета count и until, чтобы поиск номера не упирался в NONE
+    private long occurrenceOrLater(int index) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(start);
+        calendar.add(frequency.calendarField, index * interval);
+        return calendar.getTimeInMillis();
+    }
+
+    public String getLabel() {
+        String label = interval == 1 ? frequency.label
+                : frequency.label + ", шаг " + interval;
+        if (count > 0) {
+            label += ", " + count + " раз";
+        } else if (until > 0) {
+            label += ", до " + DueDateFormat.format(until);
+        }
+        return label;
+    }
+
+    public static Recurrence parse(String rule) {
+        Frequency frequency = null;
+        int interval = 1;
+        long start = 0;
+        int count = 0;
+        long until = 0;
+        try {
+            for (String part : rule.split(";")) {
+                int separator = part.indexOf('=');
+                String name = part.substring(0, separator);
+                String value = part.substring(separator + 1);
+                switch (name) {
+                    case "FREQ":
+                        frequency = Frequency.valueOf(value);
+                        break;
+                    case "INTERVAL":
+                        interval = Integer.parseInt(value);
+                        break;
+                    case "DTSTART":
+                        start = Long.parseLong(value);
+                        break;
+                    case "COUNT":
+                        count = Integer.parseInt(value);
+                        break;
+                    case "UNTIL":
+                        until = Long.parseLong(value);
+                        break;
+                    default:
+                        // Части правила из следующих версий пропускаются
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Неверное правило повторения: " + rule, e);
+        }
+        if (frequency == null) {
+            throw new IllegalArgumentException("Неверное правило повторения: " + rule);
+        }
+        return new Recurrence(frequency, interval, start, count, until);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rule = new StringBuilder()
+                .append("FREQ=").append(frequency.name())
+                .append(";INTERVAL=").append(interval)
+                .append(";DTSTART=").append(start);
+        if (count > 0) {
+            rule.append(";COUNT=").append(count);
+        }
+        if (until > 0) {
+            rule.append(";UNTIL=").append(until);
+        }
+        return rule.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Recurrence)) {
+            return false;
+        }
+        Recurrence other = (Recurrence) o;
+        return frequency == other.frequency && interval == other.interval && start == other.start
+                && count == other.count && until == other.until;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(frequency, interval, start, count, until);
+    }
+
+    public interface OccurrenceConsumer {
+        void accept(long dueDate);
+    }
+}
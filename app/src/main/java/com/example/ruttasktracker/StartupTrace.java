@@ -0,0 +1,52 @@
+package com.example.ruttasktracker;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Отметки холодного старта, в миллисекундах от запуска процесса. Каждый этап отмечается
+// один раз за процесс, поэтому пересоздание activity их не сдвигает. Отметки пишутся
+// в лог с тегом Startup:
+//
+//     adb logcat -s Startup
+//
+// Время до первой отрисовки списка попадает еще и в Metrics.STARTUP_FIRST_DRAW
+final class StartupTrace {
+    private static final String TAG = "Startup";
+
+    enum Stage {
+        APPLICATION_CREATED,
+        DATABASE_OPENED,
+        // Список из снимка первого экрана, до ответа базы
+        SNAPSHOT_SHOWN,
+        // Первая страница из базы передана адаптеру
+        FIRST_PAGE_SHOWN,
+        // Первый кадр с этой страницей
+        FIRST_DRAW
+    }
+
+    // 0 - этап еще не отмечен
+    private static final AtomicLongArray marks = new AtomicLongArray(Stage.values().length);
+
+    private StartupTrace() {
+    }
+
+    // rows - сколько задач на экране или в базе на этом этапе, для сравнения замеров
+    static void mark(Stage stage, long rows) {
+        long elapsedMs = Math.max(SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime(), 1);
+        if (!marks.compareAndSet(stage.ordinal(), 0, elapsedMs)) {
+            return;
+        }
+        Log.i(TAG, stage.name().toLowerCase() + " " + elapsedMs + " ms, задач: " + rows);
+        if (stage == Stage.FIRST_DRAW) {
+            Metrics.STARTUP_FIRST_DRAW.record(TimeUnit.MILLISECONDS.toNanos(elapsedMs), rows);
+        }
+    }
+
+    static boolean isMarked(Stage stage) {
+        return marks.get(stage.ordinal()) != 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.security.crypto.EncryptedSharedPreferences;
+import androidx.security.crypto.MasterKeys;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+// Строки подключения к серверу синхронизации. В них логин и пароль, поэтому они
+// лежат в EncryptedSharedPreferences с ключом в Android Keystore, а входные данные
+// задания WorkManager (обычная база на диске) хранят только имя записи.
+// Открытие хранилища обращается к Keystore, поэтому только в фоновом потоке
+final class SyncCredentials {
+    private static final String PREFS_NAME = "sync_credentials";
+
+    private SyncCredentials() {
+    }
+
+    @WorkerThread
+    static void put(Context context, String name, String jdbcUrl) throws GeneralSecurityException, IOException {
+        if (!open(context).edit().putString(name, jdbcUrl).commit()) {
+            throw new IOException("Не удалось сохранить строку подключения");
+        }
+    }
+
+    // null, если записи нет
+    @Nullable
+    @WorkerThread
+    static String get(Context context, String name) throws GeneralSecurityException, IOException {
+        return open(context).getString(name, null);
+    }
+
+    @WorkerThread
+    static void remove(Context context, String name) throws GeneralSecurityException, IOException {
+        open(context).edit().remove(name).commit();
+    }
+
+    private static SharedPreferences open(Context context) throws GeneralSecurityException, IOException {
+        return EncryptedSharedPreferences.create(PREFS_NAME,
+                MasterKeys.getOrCreate(MasterKeys.AES256_GCM_SPEC),
+                context.getApplicationContext(),
+                EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
+                EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.ruttasktracker;
+
+import java.sql.SQLException;
+import java.util.List;
+
+// Сервер синхронизации. Реализация для SQL Server - JdbcSyncRemote
+interface SyncRemote {
+    // Применяет пачку изменений одной транзакцией: каждое поле берется из изменения,
+    // только если оно новее значения на сервере
+    void push(List<TaskChange> changes) throws SQLException;
+
+    // До limit строк, измененных после версии watermark, по возрастанию версии
+    List<TaskChange> pull(long watermark, int limit) throws SQLException;
+}
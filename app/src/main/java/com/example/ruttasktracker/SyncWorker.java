@@ -0,0 +1,104 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.TimeUnit;
+
+// Периодическая синхронизация с SQL Server, когда есть сеть. Строка подключения JDBC
+// содержит пароль, поэтому во входных данных задания только имя записи в SyncCredentials
+public class SyncWorker extends Worker {
+    private static final String WORK_NAME = "task_sync";
+    private static final String TAG = "SyncWorker";
+    private static final String KEY_CREDENTIALS = "credentials";
+    // Имя единственной строки подключения в SyncCredentials
+    static final String CREDENTIALS_NAME = "sql_server";
+    // Минимальный интервал периодического задания WorkManager
+    private static final long INTERVAL_MINUTES = 15;
+
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String credentials = getInputData().getString(KEY_CREDENTIALS);
+        if (credentials == null) {
+            return Result.failure();
+        }
+        String jdbcUrl;
+        try {
+            jdbcUrl = SyncCredentials.get(getApplicationContext(), credentials);
+        } catch (Exception e) {
+            Log.e(TAG, "Строка подключения не прочитана", e);
+            return Result.failure();
+        }
+        if (jdbcUrl == null) {
+            return Result.failure();
+        }
+        // Неудача периодического задания не отменяет его: следующая попытка будет
+        // в следующем интервале, а не сразу с нарастающей задержкой
+        try (Connection connection = DriverManager.getConnection(jdbcUrl)) {
+            TaskRepository.getInstance(getApplicationContext()).sync(new JdbcSyncRemote(connection));
+            return Result.success();
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                Log.w(TAG, "Синхронизация будет повторена", e);
+                return Result.retry();
+            }
+            Log.e(TAG, "Синхронизация не выполнена", e);
+            return Result.failure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        } catch (Exception e) {
+            Log.e(TAG, "Синхронизация не выполнена", e);
+            return Result.failure();
+        }
+    }
+
+    // Обрыв связи (класс SQLSTATE 08), взаимоблокировка или таймаут на сервере проходят
+    // сами. Неверный пароль или схема - нет, и повтор только нагружает сервер
+    @VisibleForTesting
+    static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException
+                || e instanceof SQLRecoverableException
+                || (state != null && (state.startsWith("08") || state.equals("40001") || state.equals("HYT00")));
+    }
+
+    // Новое имя записи заменяет старое в уже запланированном задании
+    static void schedule(Context context, String credentials) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(SyncWorker.class,
+                INTERVAL_MINUTES, TimeUnit.MINUTES)
+                .setConstraints(constraints)
+                .setInputData(new Data.Builder().putString(KEY_CREDENTIALS, credentials).build())
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_NAME,
+                ExistingPeriodicWorkPolicy.UPDATE, request);
+    }
+
+    static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+}
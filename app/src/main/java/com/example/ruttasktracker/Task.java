@@ -4,21 +4,36 @@ public class Task {
     private int id;
     private String title;
     private String description;
-    private String dueDate;
+    private long dueDate; // срок в epoch millis
     private boolean completed;
+    // Правило повторения или null. У повторяющейся задачи dueDate - ее текущее повторение
+    private Recurrence recurrence;
+    // Срок в виде строки для списка, форматируется один раз на задачу
+    private String dueDateText;
 
     // Конструктор по умолчанию
     public Task() {
     }
 
     // Новый конструктор без id
-    public Task(String title, String description, String dueDate, boolean completed) {
+    public Task(String title, String description, long dueDate, boolean completed) {
         this.title = title;
         this.description = description;
         this.dueDate = dueDate;
         this.completed = completed;
     }
 
+    // Копия задачи, чтобы передать ее в другой поток
+    public Task(Task other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.description = other.description;
+        this.dueDate = other.dueDate;
+        this.completed = other.completed;
+        this.recurrence = other.recurrence;
+        this.dueDateText = other.dueDateText;
+    }
+
     // Геттеры и сеттеры
     public int getId() {
         return id;
@@ -44,12 +59,21 @@ public class Task {
         this.description = description;
     }
 
-    public String getDueDate() {
+    public long getDueDate() {
         return dueDate;
     }
 
-    public void setDueDate(String dueDate) {
+    public void setDueDate(long dueDate) {
         this.dueDate = dueDate;
+        this.dueDateText = null;
+    }
+
+    public String getDueDateText() {
+        if (dueDateText == null) {
+            dueDateText = recurrence == null ? DueDateFormat.format(dueDate)
+                    : DueDateFormat.format(dueDate) + " · " + recurrence.getLabel();
+        }
+        return dueDateText;
     }
 
     public boolean isCompleted() {
@@ -60,6 +84,38 @@ public class Task {
         this.completed = completed;
     }
 
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    public void setRecurrence(Recurrence recurrence) {
+        this.recurrence = recurrence;
+        this.dueDateText = null;
+    }
+
+    // Отмечает текущее повторение выполненным: задача переходит к следующему повторению,
+    // а после последнего сама становится выполненной. false - задача уже выполнена
+    boolean completeOccurrence() {
+        if (completed) {
+            return false;
+        }
+        moveToOccurrence(recurrence.occurrenceAfter(dueDate));
+        return true;
+    }
+
+    // Переводит задачу через истекшие повторения без отметки о выполнении
+    void skipExpiredOccurrences(long now) {
+        moveToOccurrence(recurrence.nextDueDate(dueDate, now));
+    }
+
+    private void moveToOccurrence(long next) {
+        if (next == Recurrence.NONE) {
+            completed = true;
+        } else {
+            setDueDate(next);
+        }
+    }
+
     // Переопределённый метод toString (для отладки)
     @Override
     public String toString() {
@@ -67,8 +123,9 @@ public class Task {
                 "id=" + id +
                 ", title='" + title + '\'' +
                 ", description='" + description + '\'' +
-                ", dueDate='" + dueDate + '\'' +
+                ", dueDate=" + dueDate +
                 ", completed=" + completed +
+                ", recurrence=" + recurrence +
                 '}';
     }
 }
\ No newline at end of file
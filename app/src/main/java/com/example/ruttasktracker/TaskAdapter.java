@@ -1,104 +1,292 @@
 package com.example.ruttasktracker;
 
 import android.content.Context;
-import android.graphics.Paint;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List; // Добавлен импорт
-import java.util.Locale;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
 
-public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder> {
+// Адаптер получает новые списки через submitList. Разница со старым списком
+// считается в фоновом потоке, и RecyclerView обновляет только изменившиеся элементы.
+// Тексты строк измеряются заранее в TaskTextCache: при прокрутке адаптер ставит в
+// очередь PREFETCH_ITEMS строк за видимым окном, и к привязке они уже готовы.
+// Упреждение свое, а не LinearLayoutManager.setInitialPrefetchItemCount: тот действует
+// только для вложенных списков, а предвыборка RecyclerView (GapWorker) привязывает
+// строки в главном потоке между кадрами, и измерение текста осталось бы там же
+public class TaskAdapter extends ListAdapter<Task, TaskAdapter.TaskViewHolder> {
+
+    private static final DiffUtil.ItemCallback<Task> DIFF_CALLBACK = new DiffUtil.ItemCallback<Task>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Task oldTask, @NonNull Task newTask) {
+            return oldTask.getId() == newTask.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Task oldTask, @NonNull Task newTask) {
+            return oldTask.getDueDate() == newTask.getDueDate()
+                    && oldTask.isCompleted() == newTask.isCompleted()
+                    && Objects.equals(oldTask.getTitle(), newTask.getTitle())
+                    && Objects.equals(oldTask.getDescription(), newTask.getDescription())
+                    && Objects.equals(oldTask.getRecurrence(), newTask.getRecurrence());
+        }
+    };
+
+    // Строк за краем экрана, тексты которых измеряются заранее. Несколько экранов:
+    // при быстром броске RecyclerView привязывает строки раньше, чем они видны
+    static final int PREFETCH_ITEMS = 30;
+
+    // Разделы основного списка в его порядке: активные задачи по сроку, затем остальные.
+    // Заголовки рисует TaskSectionDecoration
+    static final int SECTION_TODAY = 0;
+    static final int SECTION_THIS_WEEK = 1;
+    static final int SECTION_LATER = 2;
+    static final int SECTION_PAST = 3;
 
     private final Context context;
-    private final List<Task> taskList;  // Тип данных List<Task>
+    private final TaskTextCache textCache;
     private final OnTaskStatusChangeListener statusChangeListener;
     private final OnTaskDeleteListener deleteListener;
     private final OnTaskEditListener editListener;
 
-    public TaskAdapter(Context context, List<Task> taskList,
+    public TaskAdapter(Context context,
                        OnTaskStatusChangeListener statusChangeListener,
                        OnTaskDeleteListener deleteListener,
                        OnTaskEditListener editListener) {
+        this(context, statusChangeListener, deleteListener, editListener, new TaskTextCache());
+    }
+
+    TaskAdapter(Context context,
+                OnTaskStatusChangeListener statusChangeListener,
+                OnTaskDeleteListener deleteListener,
+                OnTaskEditListener editListener,
+                Executor textExecutor) {
+        this(context, statusChangeListener, deleteListener, editListener,
+                new TaskTextCache(textExecutor, TaskTextCache.DEFAULT_MAX_CHARS));
+    }
+
+    private TaskAdapter(Context context,
+                        OnTaskStatusChangeListener statusChangeListener,
+                        OnTaskDeleteListener deleteListener,
+                        OnTaskEditListener editListener,
+                        TaskTextCache textCache) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.taskList = taskList;
+        this.textCache = textCache;
         this.statusChangeListener = statusChangeListener;
         this.deleteListener = deleteListener;
         this.editListener = editListener;
+        // Id задачи не меняется, поэтому RecyclerView может сопоставлять элементы по нему
+        setHasStableIds(true);
+    }
+
+    // Момент, на который просрочка считается для текущего списка. Когда срок задачи
+    // истекает, DeadlineScheduler отмечает ее выполненной, и список приходит заново
+    private long listTime = System.currentTimeMillis();
+    // Границы разделов "Сегодня" и "На этой неделе" для текущего списка
+    private long todayEnd = TaskSummary.endOfDay(listTime);
+    private long weekEnd = TaskSummary.endOfWeek(listTime);
+    // Результаты поиска идут по релевантности, и разделов у них нет
+    private boolean sectionsShown;
+    // Окно TaskPager начинается с первой задачи списка, и первая строка открывает раздел
+    private boolean atListStart;
+    private RecyclerView recyclerView;
+    // Последнее известное видимое окно, по нему прогревается новый список
+    private int firstVisible, lastVisible = -1;
+
+    // Готовит задачи к показу в фоновом потоке, чтобы привязка не форматировала даты
+    static void prepareForBind(List<Task> tasks) {
+        for (Task task : tasks) {
+            task.getDueDateText();
+        }
     }
 
     @NonNull
     @Override
     public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(context).inflate(R.layout.item_task, parent, false);
-        return new TaskViewHolder(view);
+        TaskViewHolder holder = new TaskViewHolder(view);
+        if (!textCache.hasParams()) {
+            textCache.setParams(holder.txtTitle, holder.txtDescription, holder.txtDueDate);
+            prefetchAroundVisible();
+        }
+
+        // Слушатели создаются один раз на holder и находят задачу по его текущей позиции
+        holder.checkboxCompleted.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            Task task = taskAt(holder);
+            // setChecked при привязке тоже вызывает слушатель - такие вызовы пропускаем.
+            // Сравнивать с состоянием задачи нельзя: при быстрых переключениях список
+            // адаптера может еще не содержать результат предыдущего.
+            // Задачу из списка не меняем: DiffUtil сравнивает ее с новой версией
+            if (task != null && !holder.binding) {
+                statusChangeListener.onStatusChanged(task, isChecked);
+            }
+        });
+        holder.btnDelete.setOnClickListener(v -> {
+            Task task = taskAt(holder);
+            if (task != null) {
+                deleteListener.onDeleteTask(task);
+            }
+        });
+        holder.btnEdit.setOnClickListener(v -> {
+            Task task = taskAt(holder);
+            if (task != null) {
+                editListener.onEditTask(task);
+            }
+        });
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
-        Task task = taskList.get(position);
-
-        // Устанавливаем текстовые данные
-        holder.txtTitle.setText(task.getTitle());
-        holder.txtDescription.setText(task.getDescription());
-        holder.txtDueDate.setText(task.getDueDate());
-
-        // Проверяем, нужно ли зачеркнуть текст
-        boolean isOverdue = isTaskOverdue(task.getDueDate());
-        if (task.isCompleted() || isOverdue) {
-            holder.txtTitle.setPaintFlags(holder.txtTitle.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-            holder.txtDescription.setPaintFlags(holder.txtDescription.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
-            holder.txtDueDate.setPaintFlags(holder.txtDueDate.getPaintFlags() | Paint.STRIKE_THRU_TEXT_FLAG);
+        long start = Metrics.UI_BIND.begin();
+        try {
+            bind(holder, getItem(position));
+        } finally {
+            Metrics.UI_BIND.end(start, 1);
+        }
+    }
+
+    private void bind(TaskViewHolder holder, Task task) {
+        // Выполненные и просроченные задачи зачеркнуты
+        boolean struck = isStruck(task);
+        TaskTextCache.Entry text = textCache.get(task, struck);
+        if (text != null) {
+            text.apply(holder.txtTitle, holder.txtDescription, holder.txtDueDate);
         } else {
-            holder.txtTitle.setPaintFlags(holder.txtTitle.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
-            holder.txtDescription.setPaintFlags(holder.txtDescription.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
-            holder.txtDueDate.setPaintFlags(holder.txtDueDate.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
+            // Строка не попала в предвыборку (первый экран, переход к позиции):
+            // измеряем как раньше, а готовый текст пригодится при следующей привязке
+            holder.txtTitle.setText(TaskTextCache.styled(task.getTitle(), struck));
+            holder.txtDescription.setText(TaskTextCache.styled(task.getDescription(), struck));
+            holder.txtDueDate.setText(TaskTextCache.styled(task.getDueDateText(), struck));
+            textCache.prefetch(task, struck);
         }
 
-        // Устанавливаем состояние чекбокса
+        holder.binding = true;
         holder.checkboxCompleted.setChecked(task.isCompleted());
+        holder.binding = false;
+    }
 
-        // Слушатель изменения состояния чекбокса
-        holder.checkboxCompleted.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            task.setCompleted(isChecked);
-            statusChangeListener.onStatusChanged(task, isChecked);
-        });
+    private boolean isStruck(Task task) {
+        return task.isCompleted() || task.getDueDate() < listTime;
+    }
+
+    // Вызывается из OnScrollListener: ставит в очередь измерение строк,
+    // к которым движется прокрутка
+    void onScrolled(int firstVisiblePosition, int lastVisiblePosition, int dy) {
+        if (firstVisiblePosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        firstVisible = firstVisiblePosition;
+        lastVisible = lastVisiblePosition;
+        if (dy >= 0) {
+            prefetch(lastVisiblePosition + 1, lastVisiblePosition + PREFETCH_ITEMS);
+        } else {
+            prefetch(firstVisiblePosition - PREFETCH_ITEMS, firstVisiblePosition - 1);
+        }
+    }
 
-        // Слушатель удаления задачи
-        holder.itemView.findViewById(R.id.btnDelete).setOnClickListener(v -> deleteListener.onDeleteTask(task));
+    // Позиции from..to включительно, выход за границы списка обрезается
+    void prefetch(int from, int to) {
+        int last = Math.min(to, getItemCount() - 1);
+        for (int position = Math.max(from, 0); position <= last; position++) {
+            Task task = getItem(position);
+            textCache.prefetch(task, isStruck(task));
+        }
+    }
 
-        // Слушатель редактирования задачи
-        holder.itemView.findViewById(R.id.btnEdit).setOnClickListener(v -> editListener.onEditTask(task));
+    @Override
+    public void onCurrentListChanged(@NonNull List<Task> previousList, @NonNull List<Task> currentList) {
+        listTime = System.currentTimeMillis();
+        todayEnd = TaskSummary.endOfDay(listTime);
+        weekEnd = TaskSummary.endOfWeek(listTime);
+        prefetchAroundVisible();
+        // Отступ под заголовок мог появиться у строки, которая сама не изменилась
+        invalidateSections();
     }
 
     @Override
-    public int getItemCount() {
-        return taskList.size();
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
     }
 
-    private boolean isTaskOverdue(String dueDateString) {
-        try {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd.MM.yyyy HH:mm", Locale.getDefault());
-            Date dueDate = sdf.parse(dueDateString);
-            return dueDate != null && dueDate.before(new Date());
-        } catch (ParseException e) {
-            e.printStackTrace();
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
+    // Включает заголовки разделов для основного списка; atListStart - окно
+    // начинается с первой задачи
+    void setSectionsShown(boolean shown, boolean atListStart) {
+        if (sectionsShown == shown && this.atListStart == atListStart) {
+            return;
+        }
+        sectionsShown = shown;
+        this.atListStart = atListStart;
+        invalidateSections();
+    }
+
+    int getSection(int position) {
+        Task task = getItem(position);
+        if (isStruck(task)) {
+            return SECTION_PAST;
+        }
+        if (task.getDueDate() < todayEnd) {
+            return SECTION_TODAY;
+        }
+        return task.getDueDate() < weekEnd ? SECTION_THIS_WEEK : SECTION_LATER;
+    }
+
+    // Над строкой нужен заголовок. Первая строка окна, начатого не с начала списка,
+    // заголовка не получает: ее раздел мог начаться на выброшенной странице
+    boolean isSectionStart(int position) {
+        if (!sectionsShown) {
             return false;
         }
+        if (position == 0) {
+            return atListStart;
+        }
+        return getSection(position) != getSection(position - 1);
+    }
+
+    private void invalidateSections() {
+        if (recyclerView != null && !recyclerView.isComputingLayout()) {
+            recyclerView.invalidateItemDecorations();
+        }
+    }
+
+    // Строки нового списка привязываются на следующем кадре, часть успеет подготовиться
+    private void prefetchAroundVisible() {
+        prefetch(firstVisible, Math.max(lastVisible, firstVisible) + PREFETCH_ITEMS);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    @Nullable
+    private Task taskAt(TaskViewHolder holder) {
+        int position = holder.getBindingAdapterPosition();
+        return position == RecyclerView.NO_POSITION ? null : getItem(position);
     }
 
     public static class TaskViewHolder extends RecyclerView.ViewHolder {
         TextView txtTitle, txtDescription, txtDueDate;
         CheckBox checkboxCompleted;
+        Button btnEdit, btnDelete;
+        private boolean binding;
 
         public TaskViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -107,6 +295,8 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
             txtDescription = itemView.findViewById(R.id.tvDescription);
             txtDueDate = itemView.findViewById(R.id.tvDueDate);
             checkboxCompleted = itemView.findViewById(R.id.cbCompleted);
+            btnEdit = itemView.findViewById(R.id.btnEdit);
+            btnDelete = itemView.findViewById(R.id.btnDelete);
         }
     }
 
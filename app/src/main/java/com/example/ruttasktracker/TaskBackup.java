@@ -0,0 +1,349 @@
+package com.example.ruttasktracker;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Выгрузка и загрузка таблицы задач. Строки идут потоком через курсор и буфер
+// фиксированного размера, поэтому память не зависит от числа задач. Загрузка пишет
+// пачками по BATCH_SIZE задач, каждая пачка - отдельная транзакция.
+// Id задач не сохраняются: при загрузке задачи получают новые id
+public final class TaskBackup {
+    public enum Format {
+        // Двоичный формат:
+        //   заголовок: MAGIC (int), VERSION (int)
+        //   блоки:     число записей (int > 0), длина данных (int), данные, CRC32 данных (int)
+        //   конец:     0 (int), общее число записей (long)
+        //   запись:    длина (int), срок (long), выполнена (byte), название, описание,
+        //              правило повторения (в файлах до повторяющихся задач отсутствует)
+        //   строка:    длина в байтах UTF-8 (int, -1 для null), байты
+        BINARY,
+        // Одна задача на строку: {"title":..,"description":..,"dueDate":..,"completed":..},
+        // у повторяющейся задачи еще "recurrence":..
+        JSON_LINES
+    }
+
+    static final int MAGIC = 0x52545442; // "RTTB"
+    static final int VERSION = 1;
+    static final int BATCH_SIZE = 1000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Защита от испорченной длины: блок больше этого размера не читается
+    private static final int MAX_BLOCK_BYTES = 64 * 1024 * 1024;
+
+    private TaskBackup() {
+    }
+
+    // Возвращает число выгруженных задач
+    public static long exportTasks(DatabaseHelper dbHelper, WritableByteChannel channel, Format format)
+            throws IOException {
+        long start = Metrics.BACKUP_EXPORT.begin();
+        long count = 0;
+        try {
+            count = format == Format.BINARY
+                    ? exportBinary(dbHelper, channel)
+                    : exportJsonLines(dbHelper, channel);
+        } finally {
+            Metrics.BACKUP_EXPORT.end(start, count);
+        }
+        return count;
+    }
+
+    // Возвращает число загруженных задач. Если файл поврежден, пачки до места
+    // повреждения остаются в базе, а метод бросает IOException
+    public static long importTasks(DatabaseHelper dbHelper, ReadableByteChannel channel, Format format)
+            throws IOException {
+        long start = Metrics.BACKUP_IMPORT.begin();
+        long count = 0;
+        try {
+            count = format == Format.BINARY
+                    ? importBinary(dbHelper, channel)
+                    : importJsonLines(dbHelper, channel);
+        } finally {
+            Metrics.BACKUP_IMPORT.end(start, count);
+        }
+        return count;
+    }
+
+    private static long exportBinary(DatabaseHelper dbHelper, WritableByteChannel channel) throws IOException {
+        BinaryWriter writer = new BinaryWriter(channel);
+        dbHelper.readAllTasks(writer::write);
+        return writer.finish();
+    }
+
+    private static long importBinary(DatabaseHelper dbHelper, ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        readFully(channel, header, 8);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Не файл выгрузки задач");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия формата: " + version);
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        List<Task> batch = new ArrayList<>(BATCH_SIZE);
+        long imported = 0;
+        while (true) {
+            readFully(channel, header, 4);
+            int recordCount = header.getInt();
+            if (recordCount == 0) {
+                readFully(channel, header, 8);
+                long expected = header.getLong();
+                if (expected != imported) {
+                    throw new IOException("Ожидалось " + expected + " задач, прочитано " + imported);
+                }
+                return imported;
+            }
+            readFully(channel, header, 4);
+            int length = header.getInt();
+            if (recordCount < 0 || length < 0 || length > MAX_BLOCK_BYTES) {
+                throw new IOException("Поврежден заголовок блока");
+            }
+            if (block.capacity() < length) {
+                block = ByteBuffer.allocate(length);
+            }
+            readFully(channel, block, length);
+            readFully(channel, header, 4);
+            crc.reset();
+            crc.update(block.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt()) {
+                throw new IOException("Неверная контрольная сумма блока");
+            }
+
+            for (int i = 0; i < recordCount; i++) {
+                batch.add(readRecord(block));
+            }
+            if (block.hasRemaining()) {
+                throw new IOException("Лишние данные в блоке");
+            }
+            dbHelper.addTasks(batch);
+            imported += batch.size();
+            batch.clear();
+        }
+    }
+
+    private static Task readRecord(ByteBuffer block) throws IOException {
+        try {
+            int length = block.getInt();
+            int end = block.position() + length;
+            if (length < 0 || end > block.limit()) {
+                throw new IOException("Повреждена запись");
+            }
+            long dueDate = block.getLong();
+            boolean completed = block.get() != 0;
+            String title = readString(block);
+            String description = readString(block);
+            String recurrence = block.position() < end ? readString(block) : null;
+            // Поля, добавленные в следующих версиях записи, пропускаются
+            block.position(end);
+            Task task = new Task(title, description, dueDate, completed);
+            if (recurrence != null) {
+                task.setRecurrence(Recurrence.parse(recurrence));
+            }
+            return task;
+        } catch (RuntimeException e) {
+            throw new IOException("Повреждена запись", e);
+        }
+    }
+
+    private static String readString(ByteBuffer block) {
+        int length = block.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(block.array(), block.position(), length, StandardCharsets.UTF_8);
+        block.position(block.position() + length);
+        return value;
+    }
+
+    // Читает ровно length байт в начало buffer и готовит его к чтению
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Файл выгрузки обрывается");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long exportJsonLines(DatabaseHelper dbHelper, WritableByteChannel channel) throws IOException {
+        // Канал не закрываем: им владеет вызывающий
+        Writer writer = new BufferedWriter(
+                Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1), BUFFER_SIZE);
+        long[] count = new long[1];
+        dbHelper.readAllTasks(task -> {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("title", task.getTitle() == null ? JSONObject.NULL : task.getTitle());
+                json.put("description", task.getDescription() == null ? JSONObject.NULL : task.getDescription());
+                json.put("dueDate", task.getDueDate());
+                json.put("completed", task.isCompleted());
+                if (task.getRecurrence() != null) {
+                    json.put("recurrence", task.getRecurrence().toString());
+                }
+                writer.write(json.toString());
+                writer.write('\n');
+                count[0]++;
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        });
+        writer.flush();
+        return count[0];
+    }
+
+    private static long importJsonLines(DatabaseHelper dbHelper, ReadableByteChannel channel) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), BUFFER_SIZE);
+        List<Task> batch = new ArrayList<>(BATCH_SIZE);
+        long imported = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                JSONObject json = new JSONObject(line);
+                Task task = new Task(
+                        json.isNull("title") ? null : json.getString("title"),
+                        json.isNull("description") ? null : json.getString("description"),
+                        json.getLong("dueDate"),
+                        json.optBoolean("completed"));
+                if (!json.isNull("recurrence")) {
+                    task.setRecurrence(Recurrence.parse(json.getString("recurrence")));
+                }
+                batch.add(task);
+            } catch (JSONException | IllegalArgumentException e) {
+                throw new IOException("Строка " + lineNumber + ": " + e.getMessage(), e);
+            }
+            if (batch.size() == BATCH_SIZE) {
+                dbHelper.addTasks(batch);
+                imported += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            dbHelper.addTasks(batch);
+            imported += batch.size();
+        }
+        return imported;
+    }
+
+    // Собирает записи в блок и сбрасывает его в канал каждые BATCH_SIZE задач
+    private static final class BinaryWriter {
+        private final WritableByteChannel channel;
+        private final ByteBuffer header = ByteBuffer.allocate(12);
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer block = ByteBuffer.allocate(BUFFER_SIZE);
+        private int blockCount;
+        private long total;
+
+        BinaryWriter(WritableByteChannel channel) throws IOException {
+            this.channel = channel;
+            header.clear();
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(channel, header);
+        }
+
+        void write(Task task) throws IOException {
+            byte[] title = task.getTitle() == null ? null : task.getTitle().getBytes(StandardCharsets.UTF_8);
+            byte[] description = task.getDescription() == null
+                    ? null : task.getDescription().getBytes(StandardCharsets.UTF_8);
+            byte[] recurrence = task.getRecurrence() == null
+                    ? null : task.getRecurrence().toString().getBytes(StandardCharsets.UTF_8);
+            int length = 8 + 1 + stringSize(title) + stringSize(description) + stringSize(recurrence);
+            ensureCapacity(4 + length);
+
+            block.putInt(length);
+            block.putLong(task.getDueDate());
+            block.put((byte) (task.isCompleted() ? 1 : 0));
+            putString(title);
+            putString(description);
+            putString(recurrence);
+            blockCount++;
+            total++;
+            if (blockCount == BATCH_SIZE) {
+                flushBlock();
+            }
+        }
+
+        long finish() throws IOException {
+            if (blockCount > 0) {
+                flushBlock();
+            }
+            header.clear();
+            header.putInt(0).putLong(total).flip();
+            writeFully(channel, header);
+            return total;
+        }
+
+        private void flushBlock() throws IOException {
+            crc.reset();
+            crc.update(block.array(), 0, block.position());
+            header.clear();
+            header.putInt(blockCount).putInt(block.position()).flip();
+            writeFully(channel, header);
+            block.flip();
+            writeFully(channel, block);
+            header.clear();
+            header.putInt((int) crc.getValue()).flip();
+            writeFully(channel, header);
+            block.clear();
+            blockCount = 0;
+        }
+
+        private void ensureCapacity(int size) throws IOException {
+            if (block.remaining() >= size) {
+                return;
+            }
+            if (blockCount > 0) {
+                flushBlock();
+            }
+            if (block.capacity() < size) {
+                if (size > MAX_BLOCK_BYTES) {
+                    throw new IOException("Задача слишком велика для выгрузки");
+                }
+                block = ByteBuffer.allocate(size);
+            }
+        }
+
+        private static int stringSize(byte[] value) {
+            return 4 + (value == null ? 0 : value.length);
+        }
+
+        private void putString(byte[] value) {
+            if (value == null) {
+                block.putInt(-1);
+            } else {
+                block.putInt(value.length);
+                block.put(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package com.example.ruttasktracker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Все задачи процесса в памяти между TaskRepository и DatabaseHelper. Запись идет
+// сквозь кэш: сначала в базу, затем в память, поэтому кэш не сбрасывается после
+// изменений, а перечитывается только при смене схемы базы.
+// Список, проверка сроков и диалоги читают из памяти. Исключение - описания старых
+// выполненных задач: они вытесняются при превышении бюджета и дочитываются по id.
+// Бюджет ограничивает только описания выполненных задач. Описания активных задач
+// хранятся всегда, и если они одни больше бюджета, в памяти остаются только они
+class TaskCache implements TaskSource {
+    // Суммарная длина описаний в памяти, символов. Вытесняются только описания
+    // выполненных задач, активные задачи всегда хранятся целиком
+    static final long DEFAULT_DESCRIPTION_BUDGET = 4L * 1024 * 1024;
+
+    // Порядок внутри группы: срок, затем id, как в ORDER_BY_DUE_DATE
+    private static final Comparator<Entry> BY_DUE_DATE = (a, b) -> {
+        int byDueDate = Long.compare(a.dueDate, b.dueDate);
+        return byDueDate != 0 ? byDueDate : Integer.compare(a.id, b.id);
+    };
+
+    private final DatabaseHelper dbHelper;
+    private final long descriptionBudget;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Защищены lock
+    private final IntMap<Entry> byId = new IntMap<>();
+    private final NavigableSet<Entry> incomplete = new TreeSet<>(BY_DUE_DATE);
+    private final NavigableSet<Entry> completed = new TreeSet<>(BY_DUE_DATE);
+    // Выполненные задачи, описание которых еще в памяти: кандидаты на вытеснение.
+    // Вытесненные сюда не попадают, и вытеснение не проходит по ним повторно
+    private final NavigableSet<Entry> evictable = new TreeSet<>(BY_DUE_DATE);
+    private long descriptionChars;
+    // Сколько описаний вытеснено с момента создания. Каждое вытеснение - одна запись,
+    // извлеченная из evictable, так что это и число записей, просмотренных вытеснением
+    private long evictedDescriptions;
+    // Номер схемы, с которой загружен кэш; -1 - еще не загружен
+    private volatile int loadedSchema = -1;
+
+    TaskCache(DatabaseHelper dbHelper) {
+        this(dbHelper, DEFAULT_DESCRIPTION_BUDGET);
+    }
+
+    TaskCache(DatabaseHelper dbHelper, long descriptionBudget) {
+        this.dbHelper = dbHelper;
+        this.descriptionBudget = descriptionBudget;
+    }
+
+    // Перечитывает все задачи из базы, например после массовой загрузки
+    void reload() {
+        lock.writeLock().lock();
+        try {
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Помечает кэш устаревшим после записи мимо него, например изменений с сервера.
+    // Задачи перечитываются при следующем обращении, а до тех пор isLoaded ложно
+    // и список читается из базы
+    void invalidate() {
+        lock.writeLock().lock();
+        try {
+            loadedSchema = -1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> getTasksAfter(long now, Task key, boolean inclusive, int limit) {
+        List<Entry> entries = new ArrayList<>(limit);
+        List<Task> tasks;
+        List<Task> evicted = new ArrayList<>();
+        readLock();
+        try {
+            Entry nowProbe = probe(now, Integer.MIN_VALUE);
+            boolean keyIsActive = key == null || DatabaseHelper.isActive(key, now);
+            if (keyIsActive) {
+                NavigableSet<Entry> active = key == null
+                        ? incomplete.tailSet(nowProbe, true)
+                        : incomplete.tailSet(probe(key), inclusive);
+                collect(active.iterator(), null, false, limit, entries);
+            }
+            if (entries.size() < limit) {
+                NavigableSet<Entry> overdue = incomplete.headSet(nowProbe, false);
+                NavigableSet<Entry> done = completed;
+                if (!keyIsActive) {
+                    overdue = overdue.tailSet(probe(key), inclusive);
+                    done = done.tailSet(probe(key), inclusive);
+                }
+                collect(overdue.iterator(), done.iterator(), false, limit, entries);
+            }
+            tasks = copyOf(entries, evicted);
+        } finally {
+            lock.readLock().unlock();
+        }
+        restoreDescriptions(evicted);
+        return tasks;
+    }
+
+    @Override
+    public List<Task> getTasksBefore(long now, Task key, int limit) {
+        List<Entry> entries = new ArrayList<>(limit);
+        List<Task> tasks;
+        List<Task> evicted = new ArrayList<>();
+        readLock();
+        try {
+            Entry nowProbe = probe(now, Integer.MIN_VALUE);
+            Entry keyProbe = probe(key);
+            boolean keyIsActive = DatabaseHelper.isActive(key, now);
+            if (!keyIsActive) {
+                collect(incomplete.headSet(nowProbe, false).headSet(keyProbe, false).descendingIterator(),
+                        completed.headSet(keyProbe, false).descendingIterator(), true, limit, entries);
+            }
+            if (entries.size() < limit) {
+                NavigableSet<Entry> active = incomplete.tailSet(nowProbe, true);
+                if (keyIsActive) {
+                    active = active.headSet(keyProbe, false);
+                }
+                collect(active.descendingIterator(), null, true, limit, entries);
+            }
+            Collections.reverse(entries);
+            tasks = copyOf(entries, evicted);
+        } finally {
+            lock.readLock().unlock();
+        }
+        restoreDescriptions(evicted);
+        return tasks;
+    }
+
+    // Сроки всех активных задач в порядке возрастания
+    void readActiveDeadlines(long now, DatabaseHelper.DeadlineConsumer consumer) {
+        readLock();
+        try {
+            for (Entry entry : incomplete.tailSet(probe(now, Integer.MIN_VALUE), true)) {
+                consumer.accept(entry.id, entry.dueDate);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long addTask(Task task) {
+        long id = dbHelper.addTask(task);
+        if (id != -1) {
+            Task stored = new Task(task);
+            stored.setId((int) id);
+            writeLock();
+            try {
+                put(stored);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return id;
+    }
+
+    void updateTask(Task task) {
+        dbHelper.updateTask(task);
+        writeLock();
+        try {
+            if (byId.get(task.getId()) != null) {
+                put(new Task(task));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void updateCompleted(long[] ids, boolean isCompleted) {
+        dbHelper.updateCompleted(ids, isCompleted);
+        writeLock();
+        try {
+            for (long id : ids) {
+                Entry entry = byId.get((int) id);
+                if (entry != null) {
+                    applyCompleted(entry, isCompleted);
+                }
+            }
+            evictIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Write-through, как updateCompleted, но у каждой задачи свое значение
+    void updateCompleted(long[] ids, boolean[] values) {
+        dbHelper.updateCompleted(ids, values);
+        writeLock();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                Entry entry = byId.get((int) ids[i]);
+                if (entry != null) {
+                    applyCompleted(entry, values[i]);
+                }
+            }
+            evictIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Меняет отметку только в памяти, раньше базы. Запись в базу - забота вызывающего
+    // (TaskWriteBuffer); до нее список показывает новое значение, а поиск и выгрузка - старое.
+    // Не для повторяющихся задач: их отметка сразу идет через updateCompleted
+    void setCompletedInMemory(int taskId, boolean isCompleted) {
+        writeLock();
+        try {
+            Entry entry = byId.get(taskId);
+            if (entry != null) {
+                setCompleted(entry, isCompleted);
+                evictIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Копия задачи из памяти; null, если задачи нет
+    Task getTask(int taskId) {
+        readLock();
+        try {
+            Entry entry = byId.get(taskId);
+            return entry == null ? null : new Task(entry.task);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int completeOverdueTasks(long now) {
+        return completeOverdueTasks(now, null);
+    }
+
+    // Как DatabaseHelper.completeOverdueTasks. Каждая истекшая задача передается
+    // в listener, если он есть, уже в новом состоянии
+    int completeOverdueTasks(long now, OverdueListener listener) {
+        int count = dbHelper.completeOverdueTasks(now);
+        writeLock();
+        try {
+            NavigableSet<Entry> overdue = incomplete.headSet(probe(now, Integer.MIN_VALUE), false);
+            List<Entry> entries = new ArrayList<>(overdue);
+            for (Entry entry : entries) {
+                long dueDate = entry.dueDate;
+                Task task;
+                if (entry.task.getRecurrence() == null) {
+                    setCompleted(entry, true);
+                    task = entry.task;
+                } else {
+                    task = new Task(entry.task);
+                    task.skipExpiredOccurrences(now);
+                    replace(entry, task);
+                }
+                if (listener != null) {
+                    listener.onOverdue(new Task(task), dueDate);
+                }
+            }
+            evictIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return count;
+    }
+
+    void deleteTask(int taskId) {
+        dbHelper.deleteTask(taskId);
+        writeLock();
+        try {
+            remove(taskId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Переносит в архив до limit задач со сроком раньше cutoff; возвращает число перенесенных
+    int archiveTasks(long cutoff, int limit, long archivedAt) {
+        long[] ids = dbHelper.archiveTasks(cutoff, limit, archivedAt);
+        if (ids.length == 0) {
+            return 0;
+        }
+        writeLock();
+        try {
+            for (long id : ids) {
+                remove((int) id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return ids.length;
+    }
+
+    // Задачи уже в памяти, и чтение не будет ждать загрузки всей таблицы
+    boolean isLoaded() {
+        return loadedSchema == dbHelper.getSchemaVersion();
+    }
+
+    int size() {
+        readLock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long getDescriptionChars() {
+        readLock();
+        try {
+            return descriptionChars;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    long getEvictedDescriptions() {
+        readLock();
+        try {
+            return evictedDescriptions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Захват блокировки чтения; при первом обращении или смене схемы кэш сначала загружается
+    private void readLock() {
+        if (loadedSchema != dbHelper.getSchemaVersion()) {
+            reloadIfSchemaChanged();
+        }
+        lock.readLock().lock();
+    }
+
+    private void writeLock() {
+        lock.writeLock().lock();
+        try {
+            if (loadedSchema != dbHelper.getSchemaVersion()) {
+                load();
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    private void reloadIfSchemaChanged() {
+        lock.writeLock().lock();
+        try {
+            if (loadedSchema != dbHelper.getSchemaVersion()) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Вызывать под блокировкой записи
+    private void load() {
+        // Открытие базы может само создать или обновить схему, поэтому номер читаем после него
+        dbHelper.getReadableDatabase();
+        int schema = dbHelper.getSchemaVersion();
+        byId.clear();
+        incomplete.clear();
+        completed.clear();
+        evictable.clear();
+        descriptionChars = 0;
+        try {
+            // readAllTasks переиспользует объект задачи, поэтому сохраняем копии.
+            // Вытеснение - один раз после загрузки, а не на каждой строке
+            dbHelper.readAllTasks(task -> add(new Task(task)));
+        } catch (IOException e) {
+            // Обработчик выше исключений не бросает
+            throw new IllegalStateException(e);
+        }
+        evictIfNeeded();
+        loadedSchema = schema;
+    }
+
+    private void put(Task task) {
+        remove(task.getId());
+        add(task);
+        evictIfNeeded();
+    }
+
+    // Новое состояние задачи, построенное из копии entry.task. Если описание записи
+    // было вытеснено, в копии его тоже нет, и новая запись остается помеченной:
+    // иначе чтение не дочитало бы описание из базы
+    private void replace(Entry entry, Task task) {
+        boolean descriptionEvicted = entry.descriptionEvicted;
+        remove(entry.id);
+        add(task);
+        byId.get(task.getId()).descriptionEvicted = descriptionEvicted;
+        evictIfNeeded();
+    }
+
+    // Без вытеснения; задачи с этим id в кэше быть не должно
+    private void add(Task task) {
+        Entry entry = new Entry(task);
+        byId.put(entry.id, entry);
+        if (task.isCompleted()) {
+            completed.add(entry);
+            if (task.getDescription() != null) {
+                evictable.add(entry);
+            }
+        } else {
+            incomplete.add(entry);
+        }
+        descriptionChars += descriptionLength(task);
+    }
+
+    private void remove(int taskId) {
+        Entry entry = byId.remove(taskId);
+        if (entry != null) {
+            (entry.task.isCompleted() ? completed : incomplete).remove(entry);
+            evictable.remove(entry);
+            descriptionChars -= descriptionLength(entry.task);
+        }
+    }
+
+    // Повторяющаяся задача переходит к следующему повторению так же, как в
+    // DatabaseHelper.updateCompleted: кэш и база считают от одного и того же срока
+    private void applyCompleted(Entry entry, boolean isCompleted) {
+        if (isCompleted && entry.task.getRecurrence() != null) {
+            Task task = new Task(entry.task);
+            if (task.completeOccurrence()) {
+                replace(entry, task);
+            }
+        } else {
+            setCompleted(entry, isCompleted);
+        }
+    }
+
+    private void setCompleted(Entry entry, boolean isCompleted) {
+        if (entry.task.isCompleted() == isCompleted) {
+            return;
+        }
+        (isCompleted ? incomplete : completed).remove(entry);
+        entry.task.setCompleted(isCompleted);
+        (isCompleted ? completed : incomplete).add(entry);
+        if (!isCompleted) {
+            evictable.remove(entry);
+        } else if (!entry.descriptionEvicted && entry.task.getDescription() != null) {
+            evictable.add(entry);
+        }
+    }
+
+    // Вытесняет описания выполненных задач, начиная с самых давних сроков,
+    // пока суммарная длина не опустится до 3/4 бюджета или кандидаты не кончатся.
+    // Каждое описание вытесняется один раз, поэтому вызов стоит O(вытесненных * log n)
+    private void evictIfNeeded() {
+        if (descriptionChars <= descriptionBudget) {
+            return;
+        }
+        long target = descriptionBudget / 4 * 3;
+        while (descriptionChars > target && !evictable.isEmpty()) {
+            Entry entry = evictable.pollFirst();
+            descriptionChars -= descriptionLength(entry.task);
+            entry.task.setDescription(null);
+            entry.descriptionEvicted = true;
+            evictedDescriptions++;
+        }
+    }
+
+    private static int descriptionLength(Task task) {
+        return task.getDescription() == null ? 0 : task.getDescription().length();
+    }
+
+    // Сливает один или два потока записей, упорядоченных в одном направлении,
+    // пока не наберется limit
+    private static void collect(Iterator<Entry> first, Iterator<Entry> second, boolean descending,
+                                int limit, List<Entry> out) {
+        Entry a = next(first);
+        Entry b = next(second);
+        while (out.size() < limit && (a != null || b != null)) {
+            boolean takeFirst;
+            if (a == null || b == null) {
+                takeFirst = a != null;
+            } else {
+                int order = BY_DUE_DATE.compare(a, b);
+                takeFirst = descending ? order > 0 : order < 0;
+            }
+            if (takeFirst) {
+                out.add(a);
+                a = next(first);
+            } else {
+                out.add(b);
+                b = next(second);
+            }
+        }
+    }
+
+    private static Entry next(Iterator<Entry> iterator) {
+        return iterator != null && iterator.hasNext() ? iterator.next() : null;
+    }
+
+    // Копии для вызывающего: записи кэша меняются только под блокировкой записи.
+    // Копии без вытесненного описания дополнительно попадают в evicted
+    private static List<Task> copyOf(List<Entry> entries, List<Task> evicted) {
+        List<Task> tasks = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            // Строка срока форматируется один раз и переходит во все копии
+            entry.task.getDueDateText();
+            Task task = new Task(entry.task);
+            tasks.add(task);
+            if (entry.descriptionEvicted) {
+                evicted.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    // Дочитывает вытесненные описания одним запросом по первичному ключу
+    private void restoreDescriptions(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[tasks.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tasks.get(i).getId();
+        }
+        IntMap<Task> byTaskId = new IntMap<>();
+        for (Task task : tasks) {
+            byTaskId.put(task.getId(), task);
+        }
+        dbHelper.readDescriptions(ids, (taskId, description) -> {
+            Task task = byTaskId.get(taskId);
+            if (task != null) {
+                task.setDescription(description);
+            }
+        });
+    }
+
+    private static Entry probe(Task key) {
+        return probe(key.getDueDate(), key.getId());
+    }
+
+    private static Entry probe(long dueDate, int id) {
+        return new Entry(id, dueDate);
+    }
+
+    interface OverdueListener {
+        // task - задача после истечения: выполнена или перешла к следующему повторению;
+        // dueDate - истекший срок. Вызывается под блокировкой записи кэша
+        void onOverdue(Task task, long dueDate);
+    }
+
+    private static final class Entry {
+        final int id;
+        final long dueDate;
+        final Task task;
+        boolean descriptionEvicted;
+
+        Entry(Task task) {
+            this.id = task.getId();
+            this.dueDate = task.getDueDate();
+            this.task = task;
+        }
+
+        // Граница диапазона для поиска в TreeSet
+        Entry(int id, long dueDate) {
+            this.id = id;
+            this.dueDate = dueDate;
+            this.task = null;
+        }
+    }
+}
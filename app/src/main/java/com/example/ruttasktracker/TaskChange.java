@@ -0,0 +1,49 @@
+package com.example.ruttasktracker;
+
+// Изменение задачи при синхронизации, в обе стороны. Задача опознается по sync_id,
+// одинаковому на всех устройствах. У каждого поля свое время изменения (epoch millis,
+// 0 - поле не менялось): при конфликте побеждает более позднее
+final class TaskChange {
+    // Номера полей; в масках журнала поле i - бит 1 << i
+    static final int TITLE = 0;
+    static final int DESCRIPTION = 1;
+    static final int DUE_DATE = 2;
+    static final int COMPLETED = 3;
+    static final int DELETED = 4;
+    static final int FIELD_COUNT = 5;
+    // Все поля, кроме удаления: так записывается новая задача
+    static final int ALL_VALUE_FIELDS = (1 << DELETED) - 1;
+
+    final String syncId;
+    String title;
+    String description;
+    long dueDate;
+    boolean completed;
+    boolean deleted;
+    final long[] times = new long[FIELD_COUNT];
+    // Версия строки на сервере; у локальных изменений не используется
+    long version;
+    // Задача есть в локальной базе (заполняется при чтении журнала)
+    boolean found;
+
+    TaskChange(String syncId) {
+        this.syncId = syncId;
+    }
+
+    // Отмечает поля из маски измененными в момент time, если он позже известного
+    void touch(int fieldMask, long time) {
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if ((fieldMask & (1 << field)) != 0 && time > times[field]) {
+                times[field] = time;
+            }
+        }
+    }
+
+    long latestTime() {
+        long latest = 0;
+        for (long time : times) {
+            latest = Math.max(latest, time);
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.ruttasktracker;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Окно упорядоченного списка задач, которое подгружается страницами по мере прокрутки.
+// В памяти держится не больше maxPages страниц: дальние от экрана страницы выбрасываются
+// и при возврате к ним читаются снова по ключу соседней задачи.
+// Пустое окно сначала заполняется одним экраном (FIRST_PAGE_SIZE задач), и только
+// после его показа дочитывается полная страница - первый кадр не ждет лишнего
+public class TaskPager implements TaskRepository.InvalidationListener {
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int DEFAULT_MAX_PAGES = 5;
+    // Экран телефона вмещает около десятка строк
+    static final int FIRST_PAGE_SIZE = 20;
+
+    private final TaskSource source;
+    private final Executor backgroundExecutor;
+    private final Executor mainExecutor;
+    private final int pageSize;
+    private final int maxPages;
+    // Сколько элементов до края окна должно остаться, чтобы начать подгрузку
+    private final int prefetchDistance;
+
+    private final MutableLiveData<List<Task>> window = new MutableLiveData<>();
+
+    // Состояние окна меняется только в главном потоке
+    private final ArrayDeque<List<Task>> pages = new ArrayDeque<>();
+    private boolean startReached = true;
+    private boolean endReached;
+    private boolean loading;
+    private long now;
+    // Результаты загрузок, начатых до последнего refresh, отбрасываются
+    private int generation;
+
+    TaskPager(TaskSource source, Executor backgroundExecutor, Executor mainExecutor,
+              int pageSize, int maxPages) {
+        this.source = source;
+        this.backgroundExecutor = backgroundExecutor;
+        this.mainExecutor = mainExecutor;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.prefetchDistance = pageSize / 2;
+    }
+
+    public LiveData<List<Task>> getWindow() {
+        return window;
+    }
+
+    @Override
+    public void onTasksChanged() {
+        mainExecutor.execute(this::refresh);
+    }
+
+    // Перечитывает текущее окно с его первой задачи, не сдвигая позицию в списке
+    public void refresh() {
+        int loadGeneration = ++generation;
+        loading = true;
+        Task startKey = startReached || pages.isEmpty() ? null : pages.peekFirst().get(0);
+        int limit = pages.isEmpty() ? Math.min(FIRST_PAGE_SIZE, pageSize) : Math.max(pageSize, windowSize());
+        long loadNow = System.currentTimeMillis();
+
+        backgroundExecutor.execute(() -> {
+            List<Task> loaded = load(() -> source.getTasksAfter(loadNow, startKey, true, limit));
+            mainExecutor.execute(() -> {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                if (loaded.isEmpty() && startKey != null) {
+                    // Задачи с первой позиции окна и дальше удалены - начинаем с начала списка
+                    startReached = true;
+                    refresh();
+                    return;
+                }
+                loading = false;
+                now = loadNow;
+                if (startKey == null) {
+                    startReached = true;
+                }
+                pages.clear();
+                for (int from = 0; from < loaded.size(); from += pageSize) {
+                    pages.addLast(new ArrayList<>(loaded.subList(from, Math.min(from + pageSize, loaded.size()))));
+                }
+                endReached = loaded.size() < limit;
+                publish();
+                if (windowSize() < pageSize) {
+                    loadNext();
+                }
+            });
+        });
+    }
+
+    // Вызывается из слушателя прокрутки с позициями видимых элементов окна
+    public void onScrolled(int firstVisible, int lastVisible) {
+        if (lastVisible >= windowSize() - 1 - prefetchDistance) {
+            loadNext();
+        } else if (firstVisible <= prefetchDistance) {
+            loadPrevious();
+        }
+    }
+
+    // Окно начинается с первой задачи списка
+    public boolean isAtStart() {
+        return startReached && !pages.isEmpty();
+    }
+
+    private void loadNext() {
+        if (loading || endReached || pages.isEmpty()) {
+            return;
+        }
+        int loadGeneration = generation;
+        loading = true;
+        List<Task> lastPage = pages.peekLast();
+        Task key = lastPage.get(lastPage.size() - 1);
+        long loadNow = now;
+
+        backgroundExecutor.execute(() -> {
+            List<Task> loaded = load(() -> source.getTasksAfter(loadNow, key, false, pageSize));
+            mainExecutor.execute(() -> {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                endReached = loaded.size() < pageSize;
+                if (!loaded.isEmpty()) {
+                    pages.addLast(loaded);
+                }
+                while (pages.size() > maxPages) {
+                    pages.removeFirst();
+                    startReached = false;
+                }
+                publish();
+            });
+        });
+    }
+
+    private void loadPrevious() {
+        if (loading || startReached || pages.isEmpty()) {
+            return;
+        }
+        int loadGeneration = generation;
+        loading = true;
+        Task key = pages.peekFirst().get(0);
+        long loadNow = now;
+
+        backgroundExecutor.execute(() -> {
+            List<Task> loaded = load(() -> source.getTasksBefore(loadNow, key, pageSize));
+            mainExecutor.execute(() -> {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                loading = false;
+                startReached = loaded.size() < pageSize;
+                if (!loaded.isEmpty()) {
+                    pages.addFirst(loaded);
+                }
+                while (pages.size() > maxPages) {
+                    pages.removeLast();
+                    endReached = false;
+                }
+                publish();
+            });
+        });
+    }
+
+    // Чтение в фоновом потоке вместе с подготовкой задач к показу
+    private static List<Task> load(PageQuery query) {
+        long start = Metrics.PAGER_LOAD.begin();
+        List<Task> loaded = null;
+        try {
+            loaded = query.load();
+            TaskAdapter.prepareForBind(loaded);
+        } finally {
+            Metrics.PAGER_LOAD.end(start, loaded == null ? 0 : loaded.size());
+        }
+        return loaded;
+    }
+
+    private int windowSize() {
+        int size = 0;
+        for (List<Task> page : pages) {
+            size += page.size();
+        }
+        return size;
+    }
+
+    private void publish() {
+        List<Task> items = new ArrayList<>(windowSize());
+        for (List<Task> page : pages) {
+            items.addAll(page);
+        }
+        window.setValue(items);
+    }
+
+    private interface PageQuery {
+        List<Task> load();
+    }
+}
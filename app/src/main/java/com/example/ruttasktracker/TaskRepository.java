@@ -0,0 +1,423 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Единственная точка доступа UI к базе задач. Вся работа с DatabaseHelper
+// выполняется в фоне, а результат приходит в главный поток
+public class TaskRepository {
+    private static final String TAG = "TaskRepository";
+    private static final int READ_THREADS = 2;
+
+    // Политика хранения: задачи со сроком старше MAX_TASK_AGE_MS уходят в архив
+    // пачками по ARCHIVE_BATCH_SIZE, каждая пачка - отдельная транзакция
+    static final long MAX_TASK_AGE_MS = TimeUnit.DAYS.toMillis(30);
+    static final int ARCHIVE_BATCH_SIZE = 500;
+    // Сколько свободных страниц возвращается файлу за один проход
+    static final int COMPACT_MAX_PAGES = 2048;
+
+    private static volatile TaskRepository instance;
+
+    private final Context appContext;
+    private final DatabaseHelper dbHelper;
+    // Список и проверка сроков читают задачи из памяти; поиск и выгрузка идут в базу
+    private final TaskCache taskCache;
+    // Записи выполняются строго по очереди в одном потоке. В нем же срабатывают
+    // таймеры DeadlineScheduler
+    private final ScheduledExecutorService writeExecutor = Executors.newSingleThreadScheduledExecutor();
+    // Чтения идут параллельно на небольшом фиксированном пуле
+    private final ExecutorService readExecutor = Executors.newFixedThreadPool(READ_THREADS);
+    private final Executor mainExecutor = new Handler(Looper.getMainLooper())::post;
+
+    // Начало списка с прошлого запуска; читается в warmUp
+    private final FirstScreenSnapshot firstScreenSnapshot;
+    private volatile Future<List<Task>> firstScreen;
+    // Пока кэш не загружен, страницы списка читаются из базы по индексу: первый экран
+    // не ждет, пока вся таблица окажется в памяти. Порядок у обоих источников один
+    private final TaskSource listSource = new TaskSource() {
+        @Override
+        public List<Task> getTasksAfter(long now, Task key, boolean inclusive, int limit) {
+            return (taskCache.isLoaded() ? taskCache : dbHelper).getTasksAfter(now, key, inclusive, limit);
+        }
+
+        @Override
+        public List<Task> getTasksBefore(long now, Task key, int limit) {
+            return (taskCache.isLoaded() ? taskCache : dbHelper).getTasksBefore(now, key, limit);
+        }
+    };
+
+    private final List<InvalidationListener> invalidationListeners = new CopyOnWriteArrayList<>();
+    private final DeadlineScheduler deadlineScheduler;
+    // Сводные уведомления об истекших сроках
+    private final DeadlineNotifier deadlineNotifier;
+    // Отметки "выполнено" из списка пишутся в базу пачками
+    private final TaskWriteBuffer writeBuffer;
+
+    private TaskRepository(Context context) {
+        appContext = context.getApplicationContext();
+        dbHelper = DatabaseHelper.getInstance(appContext);
+        taskCache = new TaskCache(dbHelper);
+        firstScreenSnapshot = new FirstScreenSnapshot(new File(appContext.getFilesDir(), "first_screen.bin"));
+        // Таймер планировщика дублируется заданием WorkManager, чтобы срок
+        // сработал и тогда, когда процесс приложения уже завершен
+        deadlineNotifier = new DeadlineNotifier(writeExecutor, new DeadlineNotifier.SystemPoster(appContext),
+                DeadlineNotifier.DEFAULT_COALESCE_MS, DeadlineNotifier.DEFAULT_MIN_INTERVAL_MS);
+        deadlineScheduler = new DeadlineScheduler(taskCache, writeExecutor, this::notifyTasksChanged,
+                dueDate -> DeadlineWorker.schedule(appContext, dueDate), deadlineNotifier);
+        writeBuffer = new TaskWriteBuffer(taskCache, writeExecutor, TaskWriteBuffer.DEFAULT_DEBOUNCE_MS,
+                this::onCompletedFlushed);
+        write(deadlineScheduler::start);
+        ArchiveWorker.schedule(appContext);
+    }
+
+    public static TaskRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (TaskRepository.class) {
+                if (instance == null) {
+                    instance = new TaskRepository(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Холодный старт, вызывается из TaskTrackerApplication.onCreate. Пока система создает
+    // activity, в фоне открывается база (с миграцией, если она нужна) и читается снимок
+    // первого экрана. Загрузка всех задач в кэш идет своим чередом в потоке записи
+    // (DeadlineScheduler.start) и первый экран не задерживает
+    public void warmUp() {
+        firstScreen = readExecutor.submit(firstScreenSnapshot::read);
+        readExecutor.execute(() -> {
+            long start = Metrics.DB_OPEN.begin();
+            try {
+                dbHelper.getWritableDatabase();
+            } finally {
+                Metrics.DB_OPEN.end(start, 0);
+            }
+            StartupTrace.mark(StartupTrace.Stage.DATABASE_OPENED, 0);
+        });
+    }
+
+    // Снимок первого экрана с прошлого запуска, пустой список, если его нет.
+    // Результат приходит в главный поток
+    public void loadFirstScreen(FirstScreenCallback callback) {
+        Future<List<Task>> snapshot = firstScreen;
+        readExecutor.execute(() -> {
+            List<Task> tasks;
+            try {
+                tasks = snapshot != null ? snapshot.get() : firstScreenSnapshot.read();
+            } catch (InterruptedException | ExecutionException e) {
+                tasks = Collections.emptyList();
+            }
+            List<Task> result = tasks;
+            mainExecutor.execute(() -> callback.onFirstScreen(result));
+        });
+    }
+
+    // Запоминает начало списка для следующего холодного старта
+    public void saveFirstScreen(List<Task> tasks) {
+        List<Task> snapshot = new ArrayList<>(tasks.subList(0, Math.min(tasks.size(), FirstScreenSnapshot.SIZE)));
+        readExecutor.execute(() -> firstScreenSnapshot.write(snapshot));
+    }
+
+    // Окно списка задач для экрана. Обновляется после каждой записи,
+    // пока не передано в removeInvalidationListener
+    public TaskPager createPager() {
+        TaskPager pager = new TaskPager(listSource, readExecutor, mainExecutor,
+                TaskPager.DEFAULT_PAGE_SIZE, TaskPager.DEFAULT_MAX_PAGES);
+        addInvalidationListener(pager);
+        return pager;
+    }
+
+    // Окно архива, от новых сроков к старым. Обновляется после каждого переноса в архив
+    public TaskPager createArchivePager() {
+        TaskPager pager = new TaskPager(new TaskSource() {
+            @Override
+            public List<Task> getTasksAfter(long now, Task key, boolean inclusive, int limit) {
+                return dbHelper.getArchivedTasksAfter(key, inclusive, limit);
+            }
+
+            @Override
+            public List<Task> getTasksBefore(long now, Task key, int limit) {
+                return dbHelper.getArchivedTasksBefore(key, limit);
+            }
+        }, readExecutor, mainExecutor, TaskPager.DEFAULT_PAGE_SIZE, TaskPager.DEFAULT_MAX_PAGES);
+        addInvalidationListener(pager);
+        return pager;
+    }
+
+    public void addInvalidationListener(InvalidationListener listener) {
+        invalidationListeners.add(listener);
+    }
+
+    public void removeInvalidationListener(InvalidationListener listener) {
+        invalidationListeners.remove(listener);
+    }
+
+    // Полнотекстовый поиск в фоне; результат приходит в главный поток
+    public void search(String query, int limit, SearchCallback callback) {
+        readExecutor.execute(() -> {
+            List<Task> tasks = dbHelper.search(query, limit);
+            TaskAdapter.prepareForBind(tasks);
+            mainExecutor.execute(() -> callback.onSearchResult(tasks));
+        });
+    }
+
+    // Сводка для заголовка списка; результат приходит в главный поток.
+    // Отметки, еще не записанные TaskWriteBuffer, войдут в следующую сводку
+    public void loadSummary(SummaryCallback callback) {
+        readExecutor.execute(() -> {
+            long now = System.currentTimeMillis();
+            TaskSummary summary = dbHelper.getSummary(now, TaskSummary.endOfDay(now), TaskSummary.endOfWeek(now));
+            mainExecutor.execute(() -> callback.onSummary(summary));
+        });
+    }
+
+    public void addTask(Task task) {
+        Task snapshot = new Task(task);
+        write(() -> {
+            int taskId = (int) taskCache.addTask(snapshot);
+            deadlineScheduler.onTaskSaved(taskId, snapshot.getDueDate(), snapshot.isCompleted());
+        });
+    }
+
+    public void updateTask(Task task) {
+        Task snapshot = new Task(task);
+        write(() -> {
+            taskCache.updateTask(snapshot);
+            deadlineScheduler.onTaskSaved(snapshot.getId(), snapshot.getDueDate(), snapshot.isCompleted());
+        });
+    }
+
+    // Отметка "выполнено" из списка. Кэш меняется сразу, а запись в базу откладывается
+    // и объединяется с соседними переключениями (см. TaskWriteBuffer). Экран обновляет
+    // строку сам и получает уведомление, когда пачка записана
+    public void setCompleted(Task task, boolean completed) {
+        if (task.getRecurrence() != null) {
+            // Каждая отметка - отдельное выполненное повторение, поэтому их нельзя
+            // схлопывать в последнее значение: такая отметка пишется сразу
+            int taskId = task.getId();
+            write(() -> {
+                taskCache.updateCompleted(new long[]{taskId}, new boolean[]{completed});
+                onTaskSaved(taskId);
+            });
+            return;
+        }
+        writeBuffer.setCompleted(task.getId(), completed);
+    }
+
+    // Записывает отложенные отметки, не дожидаясь задержки, например в onPause
+    public Future<?> flushPendingWrites() {
+        return writeBuffer.flush();
+    }
+
+    public void deleteTask(Task task) {
+        int taskId = task.getId();
+        write(() -> {
+            taskCache.deleteTask(taskId);
+            deadlineScheduler.onTaskDeleted(taskId);
+        });
+    }
+
+    // Выгрузка всех задач в файл. Возвращает число задач
+    public Future<Long> exportTasks(File file, TaskBackup.Format format) {
+        return readExecutor.submit(() -> {
+            try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+                return TaskBackup.exportTasks(dbHelper, channel, format);
+            }
+        });
+    }
+
+    // Загрузка задач из файла в дополнение к существующим. Планировщик сроков
+    // перечитывает активные сроки, экран получает уведомление об изменении
+    public Future<Long> importTasks(File file, TaskBackup.Format format) {
+        return writeExecutor.submit(() -> {
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                return TaskBackup.importTasks(dbHelper, channel, format);
+            } finally {
+                // Даже при ошибке часть пачек уже могла попасть в базу. Массовая загрузка
+                // идет мимо кэша, поэтому он перечитывается целиком
+                taskCache.reload();
+                deadlineScheduler.start();
+                notifyTasksChanged();
+            }
+        });
+    }
+
+    // Переносит в архив задачи со сроком старше MAX_TASK_AGE_MS и сжимает файл базы.
+    // Возвращает число перенесенных задач
+    public Future<Long> archiveOldTasks() {
+        return archiveOldTasks(MAX_TASK_AGE_MS);
+    }
+
+    public Future<Long> archiveOldTasks(long maxAgeMs) {
+        return writeExecutor.submit(() -> {
+            long now = System.currentTimeMillis();
+            long cutoff = now - maxAgeMs;
+            long archived = 0;
+            int moved;
+            do {
+                moved = taskCache.archiveTasks(cutoff, ARCHIVE_BATCH_SIZE, now);
+                archived += moved;
+            } while (moved == ARCHIVE_BATCH_SIZE);
+            dbHelper.compact(COMPACT_MAX_PAGES);
+            if (archived > 0) {
+                notifyTasksChanged();
+            }
+            return archived;
+        });
+    }
+
+    // Включает периодическую синхронизацию с SQL Server (см. SyncWorker).
+    // Строка подключения сохраняется в зашифрованном хранилище, а не в задании
+    @WorkerThread
+    public void startSync(String jdbcUrl) throws GeneralSecurityException, IOException {
+        SyncCredentials.put(appContext, SyncWorker.CREDENTIALS_NAME, jdbcUrl);
+        SyncWorker.schedule(appContext, SyncWorker.CREDENTIALS_NAME);
+    }
+
+    @WorkerThread
+    public void stopSync() throws GeneralSecurityException, IOException {
+        SyncWorker.cancel(appContext);
+        SyncCredentials.remove(appContext, SyncWorker.CREDENTIALS_NAME);
+    }
+
+    // Одна синхронизация. Сеть занимает вызывающий фоновый поток, а пачки с сервера
+    // пишутся в потоке записи, как и остальные изменения (см. applyRemoteChanges)
+    @WorkerThread
+    TaskSync.Result sync(SyncRemote remote) throws Exception {
+        // Отложенные отметки должны попасть в журнал до отправки
+        flushPendingWrites().get();
+        TaskSync.Result result = TaskSync.sync(dbHelper, remote, this::applyRemoteChanges);
+        if (result.pulled > 0) {
+            // Сроки пришедших задач; кэш к этому времени уже помечен устаревшим
+            writeExecutor.submit(deadlineScheduler::start).get();
+        }
+        return result;
+    }
+
+    // Пачка пишется мимо кэша, поэтому в той же операции записи кэш помечается
+    // устаревшим: следующая операция в этом потоке не увидит задач до пачки
+    @WorkerThread
+    private int applyRemoteChanges(List<TaskChange> changes, long watermark) throws SQLException {
+        Future<Integer> applied = write(() -> {
+            int count = dbHelper.applyRemoteChanges(changes, watermark);
+            if (count > 0) {
+                taskCache.invalidate();
+            }
+            return count;
+        });
+        try {
+            return applied.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Пачка и watermark записываются вместе, поэтому повтор продолжит с нее же
+            throw new SQLTransientException("Синхронизация прервана", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Досрочная проверка сроков, например после выхода устройства из сна:
+    // таймер планировщика в глубоком сне не идет
+    public Future<?> checkDeadlines() {
+        return writeExecutor.submit(deadlineScheduler::checkDeadlines);
+    }
+
+    // Публикует уведомления об уже истекших сроках, не дожидаясь окна объединения
+    Future<?> flushDeadlineNotifications() {
+        return deadlineNotifier.flush();
+    }
+
+    private void onCompletedFlushed(long[] ids, boolean[] values) {
+        for (long id : ids) {
+            onTaskSaved((int) id);
+        }
+        notifyTasksChanged();
+    }
+
+    // Планировщик получает срок и отметку задачи в том виде, в каком они записаны
+    private void onTaskSaved(int taskId) {
+        Task saved = taskCache.getTask(taskId);
+        if (saved != null) {
+            deadlineScheduler.onTaskSaved(taskId, saved.getDueDate(), saved.isCompleted());
+        }
+    }
+
+    // Исключение из execute пул потоков молча проглатывает, поэтому оно пишется в лог
+    // здесь. Окно уведомляется и при ошибке: часть записи уже могла попасть в базу,
+    // и список должен перечитать то, что в ней на самом деле
+    private void write(Runnable operation) {
+        writeExecutor.execute(() -> {
+            try {
+                operation.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Запись не выполнена", e);
+            } finally {
+                notifyTasksChanged();
+            }
+        });
+    }
+
+    // Ошибку получает вызывающий через Future
+    private <T> Future<T> write(Callable<T> operation) {
+        return writeExecutor.submit(() -> {
+            try {
+                return operation.call();
+            } finally {
+                notifyTasksChanged();
+            }
+        });
+    }
+
+    private void notifyTasksChanged() {
+        for (InvalidationListener listener : invalidationListeners) {
+            listener.onTasksChanged();
+        }
+    }
+
+    public interface SearchCallback {
+        void onSearchResult(List<Task> tasks);
+    }
+
+    public interface SummaryCallback {
+        void onSummary(TaskSummary summary);
+    }
+
+    public interface FirstScreenCallback {
+        void onFirstScreen(List<Task> tasks);
+    }
+
+    // Вызывается в потоке записи после каждого изменения таблицы задач
+    public interface InvalidationListener {
+        void onTasksChanged();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+// Заголовки разделов списка ("Сегодня", "На этой неделе", ...) над первой строкой
+// каждого раздела. Это декорация, а не отдельные элементы адаптера: позиции строк
+// остаются позициями окна TaskPager, и подгрузка страниц и предвыборка текстов
+// считают их без поправок. Границы разделов - TaskSummary.endOfDay/endOfWeek,
+// те же, что в сводке над списком
+class TaskSectionDecoration extends RecyclerView.ItemDecoration {
+    private static final String[] TITLES = {"Сегодня", "На этой неделе", "Позже", "Просроченные и выполненные"};
+
+    private final TaskAdapter adapter;
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int padding;
+    private final int height;
+    // От верха строки до базовой линии текста заголовка
+    private final float baselineOffset;
+
+    TaskSectionDecoration(Context context, TaskAdapter adapter) {
+        this.adapter = adapter;
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 14, metrics));
+        paint.setTypeface(Typeface.DEFAULT_BOLD);
+        paint.setColor(Color.DKGRAY);
+        padding = Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 16, metrics));
+        Paint.FontMetrics font = paint.getFontMetrics();
+        height = (int) Math.ceil(font.descent - font.ascent) + padding;
+        baselineOffset = padding / 2f + font.descent;
+    }
+
+    @Override
+    public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull RecyclerView parent,
+                               @NonNull RecyclerView.State state) {
+        int position = parent.getChildAdapterPosition(view);
+        if (position != RecyclerView.NO_POSITION && adapter.isSectionStart(position)) {
+            outRect.top = height;
+        }
+    }
+
+    @Override
+    public void onDraw(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+        float left = parent.getPaddingLeft() + padding;
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            View child = parent.getChildAt(i);
+            int position = parent.getChildAdapterPosition(child);
+            if (position == RecyclerView.NO_POSITION || !adapter.isSectionStart(position)) {
+                continue;
+            }
+            float top = child.getTop() + child.getTranslationY();
+            canvas.drawText(TITLES[adapter.getSection(position)], left, top - baselineOffset, paint);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.ruttasktracker;
+
+import java.util.List;
+
+// Источник страниц упорядоченного списка задач для TaskPager: база или кэш в памяти.
+// Порядок у всех реализаций один - как у DatabaseHelper.getTasksOrdered
+interface TaskSource {
+    List<Task> getTasksAfter(long now, Task key, boolean inclusive, int limit);
+
+    List<Task> getTasksBefore(long now, Task key, int limit);
+}
@@ -0,0 +1,50 @@
+package com.example.ruttasktracker;
+
+import java.util.Calendar;
+
+// Сводка по задачам для заголовка списка. Активная задача не выполнена и срок
+// еще не наступил, просроченная не выполнена и срок прошел - как в DatabaseHelper.isActive.
+// dueToday и dueThisWeek считают активные задачи со сроком до конца дня и недели
+public final class TaskSummary {
+    public final long active;
+    public final long overdue;
+    public final long completed;
+    public final long dueToday;
+    public final long dueThisWeek;
+
+    public TaskSummary(long active, long overdue, long completed, long dueToday, long dueThisWeek) {
+        this.active = active;
+        this.overdue = overdue;
+        this.completed = completed;
+        this.dueToday = dueToday;
+        this.dueThisWeek = dueThisWeek;
+    }
+
+    // Начало завтрашнего дня по часам устройства
+    static long endOfDay(long now) {
+        Calendar calendar = startOfDay(now);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    // Начало следующей недели; первый день недели берется из локали
+    static long endOfWeek(long now) {
+        Calendar calendar = startOfDay(now);
+        calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+        if (calendar.getTimeInMillis() > now) {
+            calendar.add(Calendar.WEEK_OF_YEAR, -1);
+        }
+        calendar.add(Calendar.WEEK_OF_YEAR, 1);
+        return calendar.getTimeInMillis();
+    }
+
+    private static Calendar startOfDay(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.ruttasktracker;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Дельта-синхронизация с сервером. Сначала отправляется журнал локальных изменений
+// task_changes, затем забираются строки, измененные на сервере после сохраненной
+// отметки watermark. В обе стороны идут только изменения, а не таблицы целиком.
+// Конфликт решается по каждому полю отдельно: побеждает правка с более поздним временем.
+// Время берется по часам устройства, поэтому при расхождении часов побеждает то
+// устройство, чьи часы спешат
+final class TaskSync {
+    static final int BATCH_SIZE = 500;
+
+    private TaskSync() {
+    }
+
+    static Result sync(DatabaseHelper dbHelper, SyncRemote remote) throws SQLException {
+        return sync(dbHelper, remote, dbHelper::applyRemoteChanges);
+    }
+
+    // Пачки с сервера записывает applier; TaskRepository делает это в своем потоке записи
+    static Result sync(DatabaseHelper dbHelper, SyncRemote remote, ChangeApplier applier) throws SQLException {
+        dbHelper.enableChangeLog();
+        int pushed = push(dbHelper, remote);
+        int pulled = pull(dbHelper, remote, applier);
+        return new Result(pushed, pulled);
+    }
+
+    // Запись журнала удаляется только после того, как сервер подтвердил пачку. Если связь
+    // оборвется, пачка уйдет повторно: MERGE по времени полей повтор не испортит
+    private static int push(DatabaseHelper dbHelper, SyncRemote remote) throws SQLException {
+        long start = Metrics.SYNC_PUSH.begin();
+        int count = 0;
+        try {
+            List<TaskChange> changes = new ArrayList<>(BATCH_SIZE);
+            while (true) {
+                changes.clear();
+                long lastSeq = dbHelper.readPendingChanges(BATCH_SIZE, changes);
+                if (lastSeq == 0) {
+                    break;
+                }
+                if (!changes.isEmpty()) {
+                    remote.push(changes);
+                }
+                dbHelper.deletePendingChanges(lastSeq);
+                count += changes.size();
+            }
+        } finally {
+            Metrics.SYNC_PUSH.end(start, count);
+        }
+        return count;
+    }
+
+    // Каждая пачка применяется вместе с новым watermark одной транзакцией, поэтому
+    // после обрыва загрузка продолжается с последней примененной пачки
+    private static int pull(DatabaseHelper dbHelper, SyncRemote remote, ChangeApplier applier)
+            throws SQLException {
+        long start = Metrics.SYNC_PULL.begin();
+        int count = 0;
+        try {
+            long watermark = dbHelper.getSyncWatermark();
+            while (true) {
+                List<TaskChange> changes = remote.pull(watermark, BATCH_SIZE);
+                if (changes.isEmpty()) {
+                    break;
+                }
+                watermark = changes.get(changes.size() - 1).version;
+                count += applier.apply(changes, watermark);
+                if (changes.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } finally {
+            Metrics.SYNC_PULL.end(start, count);
+        }
+        return count;
+    }
+
+    interface ChangeApplier {
+        // Применяет пачку вместе с watermark (см. DatabaseHelper.applyRemoteChanges).
+        // Возвращает число задач, которые добавлены, изменены или удалены
+        int apply(List<TaskChange> changes, long watermark) throws SQLException;
+    }
+
+    static final class Result {
+        // Отправлено изменений задач
+        final int pushed;
+        // Задач добавлено, изменено или удалено по данным сервера
+        final int pulled;
+
+        Result(int pushed, int pulled) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+        }
+    }
+}
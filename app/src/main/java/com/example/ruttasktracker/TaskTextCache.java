@@ -0,0 +1,228 @@
+package com.example.ruttasktracker;
+
+import android.os.Process;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StrikethroughSpan;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// Заранее измеренные тексты строк списка. PrecomputedTextCompat делает в фоновом
+// потоке то, что иначе TextView делает при привязке: разбивку на абзацы и строки и
+// измерение глифов. Для длинных описаний это и есть основная цена привязки.
+// Запись хранит исходные строки и признак зачеркивания - это ее версия: если задача
+// изменилась, запись не совпадает и считается заново. Ограничение кэша - суммарная
+// длина текстов, а не число задач, чтобы несколько огромных описаний не вытесняли все.
+// Зачеркивание задано StrikethroughSpan в самом тексте, а не флагом Paint: измерение
+// привязано к параметрам TextView, и при другом Paint готовый текст не подходит.
+// Кэш живет вместе с адаптером: при смене языка или размера шрифта activity
+// пересоздается, и тексты, измеренные со старыми параметрами, не используются.
+// Записи лежат в IntMap по id задачи, порядок вытеснения - двусвязный список в самих
+// записях, поэтому get при привязке не упаковывает id в Integer
+class TaskTextCache {
+    static final int DEFAULT_MAX_CHARS = 256 * 1024;
+    // Примерная цена записи без текста, в символах
+    private static final int ENTRY_OVERHEAD = 64;
+
+    // Общий для всех экранов фоновый поток: измерение не должно отнимать ядро у главного
+    private static final Executor BACKGROUND = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "task-text");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final StrikethroughSpan STRIKE = new StrikethroughSpan();
+
+    private final Executor executor;
+    private final int maxChars;
+    // Доступ к полям ниже - под this: записи добавляет фоновый поток, читает главный
+    private final IntMap<Entry> entries = new IntMap<>();
+    // Задачи, тексты которых уже считаются
+    private final IntMap<Boolean> pending = new IntMap<>();
+    // От давно использованной записи к недавней; head вытесняется первой
+    private Entry head, tail;
+    private int chars;
+    // Задаются один раз из главного потока до первой предвыборки
+    private volatile PrecomputedTextCompat.Params titleParams, descriptionParams, dueDateParams;
+
+    TaskTextCache() {
+        this(BACKGROUND, DEFAULT_MAX_CHARS);
+    }
+
+    TaskTextCache(Executor executor, int maxChars) {
+        this.executor = executor;
+        this.maxChars = maxChars;
+    }
+
+    boolean hasParams() {
+        return dueDateParams != null;
+    }
+
+    // Параметры измерения берутся с view первой строки, у остальных они те же
+    void setParams(TextView title, TextView description, TextView dueDate) {
+        titleParams = TextViewCompat.getTextMetricsParams(title);
+        descriptionParams = TextViewCompat.getTextMetricsParams(description);
+        dueDateParams = TextViewCompat.getTextMetricsParams(dueDate);
+    }
+
+    // Готовые тексты задачи или null, если их нет или задача с тех пор изменилась
+    @Nullable
+    synchronized Entry get(Task task, boolean struck) {
+        Entry entry = entries.get(task.getId());
+        if (entry == null || !entry.matches(task, struck)) {
+            return null;
+        }
+        unlink(entry);
+        linkLast(entry);
+        return entry;
+    }
+
+    // Ставит задачу в очередь на измерение, если готовых текстов для нее нет.
+    // Задачи в списке адаптера не меняются, поэтому передаются без копирования
+    void prefetch(Task task, boolean struck) {
+        int taskId = task.getId();
+        synchronized (this) {
+            if (!hasParams() || get(task, struck) != null || pending.put(taskId, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+        executor.execute(() -> {
+            long start = Metrics.UI_PRECOMPUTE_TEXT.begin();
+            Entry entry = null;
+            try {
+                entry = new Entry(task, struck,
+                        precompute(task.getTitle(), struck, titleParams),
+                        precompute(task.getDescription(), struck, descriptionParams),
+                        precompute(task.getDueDateText(), struck, dueDateParams));
+            } finally {
+                put(taskId, entry);
+                Metrics.UI_PRECOMPUTE_TEXT.end(start, 1);
+            }
+        });
+    }
+
+    // Сохраняет запись (null - измерение не удалось) и вытесняет давно
+    // использованные, пока суммарная длина больше maxChars
+    private synchronized void put(int taskId, @Nullable Entry entry) {
+        pending.remove(taskId);
+        if (entry == null) {
+            return;
+        }
+        Entry previous = entries.put(taskId, entry);
+        if (previous != null) {
+            unlink(previous);
+            chars -= previous.size;
+        }
+        linkLast(entry);
+        chars += entry.size;
+        while (chars > maxChars) {
+            Entry eldest = head;
+            unlink(eldest);
+            entries.remove(eldest.taskId);
+            chars -= eldest.size;
+        }
+    }
+
+    private void linkLast(Entry entry) {
+        entry.previous = tail;
+        entry.next = null;
+        if (tail == null) {
+            head = entry;
+        } else {
+            tail.next = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.previous == null) {
+            head = entry.next;
+        } else {
+            entry.previous.next = entry.next;
+        }
+        if (entry.next == null) {
+            tail = entry.previous;
+        } else {
+            entry.next.previous = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    // Текст для TextView без предварительного измерения - на случай промаха
+    static CharSequence styled(@Nullable String text, boolean struck) {
+        if (text == null || !struck) {
+            return text;
+        }
+        SpannableString styled = new SpannableString(text);
+        styled.setSpan(STRIKE, 0, text.length(), Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+        return styled;
+    }
+
+    @Nullable
+    private static PrecomputedTextCompat precompute(@Nullable String text, boolean struck,
+                                                    PrecomputedTextCompat.Params params) {
+        return text == null ? null : PrecomputedTextCompat.create(styled(text, struck), params);
+    }
+
+    static final class Entry {
+        private final int taskId;
+        private final String title, description, dueDateText;
+        private final boolean struck;
+        private final PrecomputedTextCompat titleText, descriptionText, dueDateTextLayout;
+        // Примерная цена записи в символах
+        private final int size;
+        // Соседи в порядке использования, под блокировкой кэша
+        private Entry previous, next;
+
+        Entry(Task task, boolean struck, PrecomputedTextCompat titleText,
+              PrecomputedTextCompat descriptionText, PrecomputedTextCompat dueDateTextLayout) {
+            taskId = task.getId();
+            title = task.getTitle();
+            description = task.getDescription();
+            dueDateText = task.getDueDateText();
+            this.struck = struck;
+            this.titleText = titleText;
+            this.descriptionText = descriptionText;
+            this.dueDateTextLayout = dueDateTextLayout;
+            size = ENTRY_OVERHEAD + length(title) + length(description) + length(dueDateText);
+        }
+
+        // Строки задачи из списка обычно те же объекты, что в записи,
+        // и equals завершается на сравнении ссылок
+        boolean matches(Task task, boolean struck) {
+            return this.struck == struck
+                    && Objects.equals(title, task.getTitle())
+                    && Objects.equals(description, task.getDescription())
+                    && Objects.equals(dueDateText, task.getDueDateText());
+        }
+
+        void apply(TextView title, TextView description, TextView dueDate) {
+            apply(title, titleText);
+            apply(description, descriptionText);
+            apply(dueDate, dueDateTextLayout);
+        }
+
+        private static void apply(TextView view, @Nullable PrecomputedTextCompat text) {
+            if (text == null) {
+                view.setText(null);
+            } else {
+                TextViewCompat.setPrecomputedText(view, text);
+            }
+        }
+
+        private static int length(@Nullable String text) {
+            return text == null ? 0 : text.length();
+        }
+    }
+}
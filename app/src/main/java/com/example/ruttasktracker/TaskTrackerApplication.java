@@ -0,0 +1,14 @@
+package com.example.ruttasktracker;
+
+import android.app.Application;
+
+// Начинает холодный старт как можно раньше: база открывается и снимок первого экрана
+// читается в фоне, пока система еще создает MainActivity
+public class TaskTrackerApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StartupTrace.mark(StartupTrace.Stage.APPLICATION_CREATED, 0);
+        TaskRepository.getInstance(this).warmUp();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ruttasktracker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Отложенная запись отметок "выполнено" из списка. Переключение сразу меняет задачу
+// в кэше, а в базу попадает пачкой: повторные переключения одной задачи схлопываются
+// в последнее значение, и вся пачка пишется одной транзакцией через debounceMs после
+// первого переключения или раньше, по flush (MainActivity вызывает его в onPause).
+//
+// Гарантии сохранности:
+// - пока процесс жив, переключение попадает в базу не позже чем через debounceMs;
+//   до этого оно есть только в памяти и при аварийном завершении процесса теряется
+// - пачка пишется одной транзакцией, поэтому после сбоя в базе либо вся пачка, либо
+//   ничего из нее; после перезапуска список читается из базы и показывает состояние
+//   до потерянной пачки, а не ее часть
+// - в режиме synchronous = NORMAL последняя записанная пачка может откатиться при
+//   отключении питания (см. DatabaseHelper.SYNCHRONOUS_MODE)
+// - если запись не удалась, пачка возвращается в очередь, кроме задач, которые
+//   успели переключить снова, и пишется при следующем flush
+class TaskWriteBuffer {
+    static final long DEFAULT_DEBOUNCE_MS = 300;
+
+    private final TaskCache taskCache;
+    // Поток записи TaskRepository: пачки пишутся по очереди с остальными записями
+    private final ScheduledExecutorService executor;
+    private final long debounceMs;
+    private final FlushListener flushListener;
+
+    // Последнее значение для каждой задачи, ожидающей записи. Доступ под this
+    private final Map<Integer, Boolean> pending = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    TaskWriteBuffer(TaskCache taskCache, ScheduledExecutorService executor, long debounceMs,
+                    FlushListener flushListener) {
+        this.taskCache = taskCache;
+        this.executor = executor;
+        this.debounceMs = debounceMs;
+        this.flushListener = flushListener;
+    }
+
+    // Вызывается из любого потока
+    void setCompleted(int taskId, boolean completed) {
+        taskCache.setCompletedInMemory(taskId, completed);
+        synchronized (this) {
+            pending.put(taskId, completed);
+            if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::writePending, debounceMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Пишет накопленное, не дожидаясь задержки
+    Future<?> flush() {
+        return executor.submit(this::writePending);
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void writePending() {
+        long[] ids;
+        boolean[] values;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            ids = new long[pending.size()];
+            values = new boolean[ids.length];
+            int i = 0;
+            for (Map.Entry<Integer, Boolean> entry : pending.entrySet()) {
+                ids[i] = entry.getKey();
+                values[i] = entry.getValue();
+                i++;
+            }
+            pending.clear();
+        }
+        try {
+            taskCache.updateCompleted(ids, values);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                for (int i = 0; i < ids.length; i++) {
+                    pending.putIfAbsent((int) ids[i], values[i]);
+                }
+            }
+            throw e;
+        }
+        flushListener.onFlushed(ids, values);
+    }
+
+    // Вызывается в потоке записи после того, как пачка записана
+    interface FlushListener {
+        void onFlushed(long[] ids, boolean[] values);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Одно долгоживущее соединение DatabaseHelper. Задержку операции с ним и с открытием
+ * соединения на каждый вызов (как было раньше) замеряет PipelineBenchmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseConnectionTest {
+    private static final int OPERATIONS = 50;
+    private static final long HOUR = 3_600_000L;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void sharedConnectionUsesWriteAheadLog() {
+        assertTrue(dbHelper.getWritableDatabase().isWriteAheadLoggingEnabled());
+    }
+
+    // Записи через общее соединение видны следующим чтениям и переживают его закрытие
+    @Test
+    public void writesSurviveReopen() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < OPERATIONS; i++) {
+            dbHelper.addTask(new Task("Задача " + i, "Описание", now + (i + 1) * HOUR, false));
+            List<Task> tasks = dbHelper.getTasksOrdered(now);
+            assertEquals(i + 1, tasks.size());
+
+            // Активная задача одна - только что добавленная, она идет первой
+            Task added = tasks.get(0);
+            assertEquals("Задача " + i, added.getTitle());
+            added.setCompleted(true);
+            dbHelper.updateTask(added);
+        }
+
+        dbHelper.close();
+
+        List<Task> tasks = dbHelper.getTasksOrdered(now);
+        assertEquals(OPERATIONS, tasks.size());
+        for (Task task : tasks) {
+            assertTrue(task.getTitle(), task.isCompleted());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseHelperBatchTest {
+    private static final int BATCH_SIZE = 10_000;
+    private static final long MINUTE = 60_000L;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void addTasks_insertsTenThousandTasksWellUnderASecond() {
+        List<Task> tasks = createTasks(BATCH_SIZE);
+        // Создание схемы не входит в замер
+        dbHelper.getWritableDatabase();
+
+        long start = System.nanoTime();
+        dbHelper.addTasks(tasks);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(BATCH_SIZE, dbHelper.getAllTasks().size());
+        assertTrue("вставка заняла " + elapsedMillis + " ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void updateCompleted_changesOnlyGivenTasks() {
+        dbHelper.addTasks(createTasks(10));
+        List<Task> stored = dbHelper.getAllTasks();
+
+        dbHelper.updateCompleted(new long[]{stored.get(2).getId(), stored.get(5).getId()}, true);
+
+        for (Task task : dbHelper.getAllTasks()) {
+            boolean expected = task.getId() == stored.get(2).getId() || task.getId() == stored.get(5).getId();
+            assertEquals(task.toString(), expected, task.isCompleted());
+        }
+    }
+
+    @Test
+    public void deleteTasks_removesOnlyGivenTasks() {
+        dbHelper.addTasks(createTasks(10));
+        List<Task> stored = dbHelper.getAllTasks();
+
+        dbHelper.deleteTasks(new long[]{stored.get(0).getId(), stored.get(9).getId()});
+
+        List<Task> remaining = dbHelper.getAllTasks();
+        assertEquals(8, remaining.size());
+        for (Task task : remaining) {
+            assertFalse(task.getId() == stored.get(0).getId() || task.getId() == stored.get(9).getId());
+        }
+    }
+
+    @Test
+    public void cachedStatementsSurviveReopen() {
+        dbHelper.addTask(new Task("Первая", "Описание", MINUTE, false));
+        dbHelper.close();
+        dbHelper.addTask(new Task("Вторая", "Описание", 2 * MINUTE, false));
+
+        assertEquals(2, dbHelper.getAllTasks().size());
+    }
+
+    private static List<Task> createTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task("Задача " + i, "Описание задачи " + i, now + i * MINUTE, false));
+        }
+        return tasks;
+    }
+}
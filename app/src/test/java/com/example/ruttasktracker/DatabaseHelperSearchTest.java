@@ -0,0 +1,94 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseHelperSearchTest {
+    private static final int TASK_COUNT = 100_000;
+    private static final long MINUTE = 60_000L;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void search_matchesWordPrefixesIgnoringCase() {
+        long now = System.currentTimeMillis();
+        dbHelper.addTask(new Task("Квартальный отчет", "Собрать цифры", now + MINUTE, false));
+        dbHelper.addTask(new Task("Купить молоко", "В магазине", now + 2 * MINUTE, false));
+
+        List<Task> found = dbHelper.search("ОТЧ", 10);
+
+        assertEquals(1, found.size());
+        assertEquals("Квартальный отчет", found.get(0).getTitle());
+        assertTrue(dbHelper.search("\"-*", 10).isEmpty());
+    }
+
+    @Test
+    public void search_ranksTitleMatchesFirst() {
+        long now = System.currentTimeMillis();
+        dbHelper.addTask(new Task("Позвонить", "Обсудить отчет", now + MINUTE, false));
+        dbHelper.addTask(new Task("Отчет", "Отправить", now + 2 * MINUTE, false));
+
+        List<Task> found = dbHelper.search("отчет", 10);
+
+        assertEquals(2, found.size());
+        assertEquals("Отчет", found.get(0).getTitle());
+        assertEquals("Позвонить", found.get(1).getTitle());
+    }
+
+    @Test
+    public void search_followsUpdatesAndDeletes() {
+        long now = System.currentTimeMillis();
+        dbHelper.addTask(new Task("Черновик", "Текст", now + MINUTE, false));
+        Task task = dbHelper.getAllTasks().get(0);
+
+        task.setTitle("Чистовик");
+        dbHelper.updateTask(task);
+        assertTrue(dbHelper.search("черновик", 10).isEmpty());
+        assertEquals(1, dbHelper.search("чистовик", 10).size());
+
+        dbHelper.deleteTask(task.getId());
+        assertTrue(dbHelper.search("чистовик", 10).isEmpty());
+    }
+
+    @Test
+    public void search_onHundredThousandTasksIsFast() {
+        List<Task> tasks = new ArrayList<>(TASK_COUNT);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            String title = i % 1000 == 0 ? "Редкая задача " + i : "Задача " + i;
+            tasks.add(new Task(title, "Описание задачи " + i, now + i * MINUTE, false));
+        }
+        dbHelper.addTasks(tasks);
+        // Первый запрос прогревает кэш страниц и не входит в замер
+        dbHelper.search("редк", 50);
+
+        long start = System.nanoTime();
+        List<Task> found = dbHelper.search("редк", 50);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(50, found.size());
+        assertTrue("поиск занял " + elapsedMillis + " ms", elapsedMillis < 50);
+    }
+}
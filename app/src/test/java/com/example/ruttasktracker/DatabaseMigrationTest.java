@@ -0,0 +1,104 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// База схемы v2 со сроками-строками открывается через DatabaseHelper и обновляется
+// до текущей версии
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseMigrationTest {
+    private static final String DATABASE_NAME = "migration_v2.db";
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (dbHelper != null) {
+            dbHelper.close();
+        }
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void dueDatesAreConvertedAndIdsKept() throws Exception {
+        SQLiteDatabase legacy = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+        try {
+            // Таблица в том виде, в каком ее создавала версия 2
+            legacy.execSQL("CREATE TABLE tasks (id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "title TEXT, description TEXT, due_date TEXT, completed INTEGER DEFAULT 0)");
+            insertLegacy(legacy, 1, "Отчет", "Квартальный", "15.03.2024 09:30", 0);
+            insertLegacy(legacy, 2, "Звонок", null, "01.01.2025 00:00", 1);
+            // Строки, которые не разбираются: срок становится 0, задача остается
+            insertLegacy(legacy, 4, "Без времени", null, "15.03.2024", 0);
+            insertLegacy(legacy, 5, "Мусор", null, "завтра", 1);
+            insertLegacy(legacy, 6, "Пустой срок", null, "", 0);
+            insertLegacy(legacy, 7, "Без срока", null, null, 0);
+            // Удаленная задача: ее id уже выдан и не должен повториться
+            insertLegacy(legacy, 9, "Удаленная", null, "02.02.2024 10:00", 0);
+            legacy.execSQL("DELETE FROM tasks WHERE id = 9");
+            legacy.setVersion(2);
+        } finally {
+            legacy.close();
+        }
+
+        dbHelper = new DatabaseHelper(context, DATABASE_NAME);
+        Map<Integer, Task> tasks = new HashMap<>();
+        for (Task task : dbHelper.getAllTasks()) {
+            tasks.put(task.getId(), task);
+        }
+
+        assertEquals(6, tasks.size());
+        assertTask(tasks.get(1), "Отчет", DueDateFormat.parse("15.03.2024 09:30"), false);
+        assertEquals("Квартальный", tasks.get(1).getDescription());
+        assertTask(tasks.get(2), "Звонок", DueDateFormat.parse("01.01.2025 00:00"), true);
+        assertNull(tasks.get(2).getDescription());
+        assertTask(tasks.get(4), "Без времени", 0, false);
+        assertTask(tasks.get(5), "Мусор", 0, true);
+        assertTask(tasks.get(6), "Пустой срок", 0, false);
+        assertTask(tasks.get(7), "Без срока", 0, false);
+
+        // Счетчик AUTOINCREMENT перенесен вместе с таблицей
+        long nextId = dbHelper.addTask(new Task("Новая", null, System.currentTimeMillis(), false));
+        assertEquals(10, nextId);
+
+        // Перенесенные задачи видны и в упорядоченной выборке по новому индексу
+        List<Task> ordered = dbHelper.getTasksOrdered(System.currentTimeMillis());
+        assertEquals(7, ordered.size());
+    }
+
+    private static void insertLegacy(SQLiteDatabase db, int id, String title, String description,
+                                     String dueDate, int completed) {
+        db.execSQL("INSERT INTO tasks (id, title, description, due_date, completed) VALUES (?, ?, ?, ?, ?)",
+                new Object[]{id, title, description, dueDate, completed});
+    }
+
+    private static void assertTask(Task task, String title, long dueDate, boolean completed) {
+        assertTrue("задача " + title, task != null);
+        assertEquals(title, task.getTitle());
+        assertEquals("срок задачи " + title, dueDate, task.getDueDate());
+        assertEquals("отметка задачи " + title, completed, task.isCompleted());
+    }
+}
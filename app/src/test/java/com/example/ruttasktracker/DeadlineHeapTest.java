@@ -0,0 +1,63 @@
+package com.example.ruttasktracker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeadlineHeapTest {
+    @Test
+    public void popsInDueDateOrder() {
+        Random random = new Random(5);
+        DeadlineHeap heap = new DeadlineHeap();
+        long[] expected = new long[1_000];
+        for (int i = 0; i < expected.length; i++) {
+            // Повторяющиеся сроки тоже должны извлекаться все
+            expected[i] = random.nextInt(300);
+            heap.push(i, expected[i]);
+        }
+        Arrays.sort(expected);
+
+        assertEquals(expected.length, heap.size());
+        for (long dueDate : expected) {
+            assertEquals(dueDate, heap.peekDueDate());
+            heap.pop();
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void taskIdStaysWithItsDueDate() {
+        DeadlineHeap heap = new DeadlineHeap();
+        for (int id = 100; id > 0; id--) {
+            heap.push(id, id * 10L);
+        }
+        for (int id = 1; id <= 100; id++) {
+            assertEquals(id, heap.peekTaskId());
+            assertEquals(id * 10L, heap.peekDueDate());
+            heap.pop();
+        }
+    }
+
+    @Test
+    public void interleavedPushAndPopKeepOrder() {
+        Random random = new Random(8);
+        DeadlineHeap heap = new DeadlineHeap();
+        long last = Long.MIN_VALUE;
+        for (int step = 0; step < 5_000; step++) {
+            if (heap.isEmpty() || random.nextInt(3) != 0) {
+                // Новые сроки не раньше уже извлеченных, как у таймера планировщика
+                heap.push(step, Math.max(last, 0) + random.nextInt(1_000));
+            } else {
+                assertTrue(heap.peekDueDate() >= last);
+                last = heap.peekDueDate();
+                heap.pop();
+            }
+        }
+        heap.clear();
+        assertTrue(heap.isEmpty());
+    }
+}
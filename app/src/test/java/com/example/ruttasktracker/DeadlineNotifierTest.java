@@ -0,0 +1,110 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class DeadlineNotifierTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private DatabaseHelper dbHelper;
+    private ScheduledExecutorService executor;
+    // Доступ под this
+    private final List<Integer> postedCounts = new ArrayList<>();
+    private final CountDownLatch firstPost = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        dbHelper.close();
+    }
+
+    @Test
+    public void burstExpiryPostsBoundedNumberOfNotifications() throws Exception {
+        long minIntervalMs = 200;
+        DeadlineNotifier notifier = createNotifier(20, minIntervalMs);
+
+        // 2000 задач истекают десятью волнами в течение секунды
+        long start = System.currentTimeMillis();
+        for (int wave = 0; wave < 10; wave++) {
+            for (int i = 0; i < 200; i++) {
+                notifier.onOverdue(new Task("Задача " + i, null, 0, true), System.currentTimeMillis());
+            }
+            Thread.sleep(100);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        notifier.flush().get();
+
+        synchronized (this) {
+            int total = 0;
+            for (int count : postedCounts) {
+                total += count;
+            }
+            assertEquals(2000, total);
+            // +1 за первую сводку и +1 за flush
+            assertTrue("уведомлений " + postedCounts.size(),
+                    postedCounts.size() <= elapsed / minIntervalMs + 2);
+        }
+    }
+
+    @Test
+    public void tasksExpiringTogetherGiveOneNotification() throws Exception {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            tasks.add(new Task("Задача " + i, null, now + 300, false));
+        }
+        // Давно истекшие задачи закрываются, но не уведомляются
+        for (int i = 0; i < 50; i++) {
+            tasks.add(new Task("Старая " + i, null, now - 2 * DAY, false));
+        }
+        dbHelper.addTasks(tasks);
+        TaskCache cache = new TaskCache(dbHelper);
+        DeadlineScheduler scheduler = new DeadlineScheduler(cache, executor, () -> { },
+                dueDate -> { }, createNotifier(100, DeadlineNotifier.DEFAULT_MIN_INTERVAL_MS));
+
+        executor.submit(scheduler::start).get();
+
+        assertTrue(firstPost.await(5, TimeUnit.SECONDS));
+        // Вторая сводка не приходит
+        Thread.sleep(300);
+        synchronized (this) {
+            assertEquals(1, postedCounts.size());
+            assertEquals(300, (int) postedCounts.get(0));
+        }
+        for (Task task : dbHelper.getAllTasks()) {
+            assertTrue(task.isCompleted());
+        }
+    }
+
+    private DeadlineNotifier createNotifier(long coalesceMs, long minIntervalMs) {
+        return new DeadlineNotifier(executor, (notificationId, taskCount, titles) -> {
+            assertTrue(titles.size() <= DeadlineNotifier.MAX_TITLES);
+            synchronized (this) {
+                postedCounts.add(taskCount);
+            }
+            firstPost.countDown();
+        }, coalesceMs, minIntervalMs);
+    }
+}
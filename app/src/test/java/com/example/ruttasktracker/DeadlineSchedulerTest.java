@@ -0,0 +1,155 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Методы планировщика вызываются в его потоке, как в TaskRepository
+@RunWith(RobolectricTestRunner.class)
+public class DeadlineSchedulerTest {
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    private DatabaseHelper dbHelper;
+    private TaskCache cache;
+    private ScheduledExecutorService executor;
+    private final List<Long> nextDeadlines = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger expiredBatches = new AtomicInteger();
+    private final CountDownLatch firstExpiry = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+        cache = new TaskCache(dbHelper);
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        dbHelper.close();
+    }
+
+    @Test
+    public void staleEntriesAreSkippedAfterRetrackAndRemoval() throws Exception {
+        long now = System.currentTimeMillis();
+        int first = (int) dbHelper.addTask(new Task("Первая", null, now + HOUR, false));
+        int second = (int) dbHelper.addTask(new Task("Вторая", null, now + 2 * HOUR, false));
+        DeadlineScheduler scheduler = createScheduler();
+        run(scheduler::start);
+        assertEquals(now + HOUR, lastDeadline());
+
+        // Запись первой задачи со старым сроком остается в куче, но уже не ближайшая
+        run(() -> scheduler.onTaskSaved(first, now + 3 * HOUR, false));
+        assertEquals(now + 2 * HOUR, lastDeadline());
+
+        run(() -> {
+            scheduler.onTaskDeleted(second);
+            scheduler.checkDeadlines();
+        });
+        assertEquals(now + 3 * HOUR, lastDeadline());
+
+        run(() -> scheduler.onTaskSaved(first, now + 3 * HOUR, true));
+        assertEquals(Long.MAX_VALUE, lastDeadline());
+        assertEquals(0, expiredBatches.get());
+    }
+
+    @Test
+    public void heapIsRebuiltWhenStaleEntriesPassThreshold() throws Exception {
+        long now = System.currentTimeMillis();
+        int taskCount = 10;
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < taskCount; i++) {
+            tasks.add(new Task("Задача " + i, null, now + 2 * HOUR + i * MINUTE, false));
+        }
+        dbHelper.addTasks(tasks);
+        int taskId = dbHelper.getAllTasks().get(0).getId();
+        DeadlineScheduler scheduler = createScheduler();
+        run(scheduler::start);
+        assertEquals(taskCount, heapSize(scheduler));
+
+        // Каждый новый срок раньше прежнего, поэтому устаревшие записи не всплывают
+        // наверх и копятся, пока куча не превысит 2 * активных + 64
+        int threshold = 2 * taskCount + 64;
+        int pushes = 0;
+        while (true) {
+            pushes++;
+            long dueDate = now + HOUR - pushes * 1000L;
+            run(() -> scheduler.onTaskSaved(taskId, dueDate, false));
+            int size = heapSize(scheduler);
+            if (size != taskCount + pushes) {
+                // Перестроена: остались только актуальные записи
+                assertEquals(taskCount, size);
+                break;
+            }
+            assertTrue("куча " + size, size <= threshold);
+        }
+        // Перестройка - на первой записи сверх порога, и ближайший срок не потерян
+        assertEquals(threshold + 1, taskCount + pushes);
+        assertEquals(now + HOUR - pushes * 1000L, lastDeadline());
+    }
+
+    @Test
+    public void expiredTasksAreCompletedInOneBatch() throws Exception {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        // Одинаковый срок: все истекают к одному срабатыванию таймера
+        for (int i = 0; i < 500; i++) {
+            tasks.add(new Task("Задача " + i, null, now + 2000, false));
+        }
+        tasks.add(new Task("Позже", null, now + HOUR, false));
+        dbHelper.addTasks(tasks);
+        DeadlineScheduler scheduler = createScheduler();
+        run(scheduler::start);
+        assertEquals(now + 2000, lastDeadline());
+
+        assertTrue(firstExpiry.await(10, TimeUnit.SECONDS));
+        // Очередь потока пройдена: таймер отработал и новых проверок не ставил
+        run(() -> { });
+
+        assertEquals(1, expiredBatches.get());
+        int completed = 0;
+        for (Task task : dbHelper.getAllTasks()) {
+            if (task.isCompleted()) {
+                completed++;
+            }
+        }
+        assertEquals(500, completed);
+        assertEquals(now + HOUR, lastDeadline());
+    }
+
+    private DeadlineScheduler createScheduler() {
+        return new DeadlineScheduler(cache, executor, () -> {
+            expiredBatches.incrementAndGet();
+            firstExpiry.countDown();
+        }, nextDeadlines::add, (task, dueDate) -> { });
+    }
+
+    private void run(Runnable operation) throws Exception {
+        executor.submit(operation).get();
+    }
+
+    private int heapSize(DeadlineScheduler scheduler) throws Exception {
+        return executor.submit(scheduler::heapSize).get();
+    }
+
+    private long lastDeadline() {
+        return nextDeadlines.get(nextDeadlines.size() - 1);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.work.Configuration;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Передача ближайшего срока из DeadlineScheduler в WorkManager
+@RunWith(RobolectricTestRunner.class)
+public class DeadlineWorkerTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private Context context;
+    private DatabaseHelper dbHelper;
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, new Configuration.Builder()
+                .setExecutor(new SynchronousExecutor())
+                .build());
+        dbHelper = new DatabaseHelper(context);
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        dbHelper.close();
+    }
+
+    @Test
+    public void newDeadlineReplacesScheduledCheck() throws Exception {
+        long now = System.currentTimeMillis();
+        DeadlineWorker.schedule(context, now + 2 * HOUR);
+        DeadlineWorker.schedule(context, now + HOUR);
+
+        List<WorkInfo> infos = workInfos();
+        assertEquals(1, count(infos, WorkInfo.State.ENQUEUED));
+        assertEquals(1, count(infos, WorkInfo.State.CANCELLED));
+
+        DeadlineWorker.schedule(context, Long.MAX_VALUE);
+        assertEquals(0, count(workInfos(), WorkInfo.State.ENQUEUED));
+    }
+
+    @Test
+    public void deadlineReportedDuringWorkDoesNotCancelIt() throws Exception {
+        long now = System.currentTimeMillis();
+        DeadlineWorker.schedule(context, now + HOUR);
+        WorkInfo current = workInfos().get(0);
+
+        DeadlineWorker.onWorkStarted();
+        try {
+            // Так планировщик сообщает следующий срок из doWork
+            DeadlineWorker.schedule(context, now + 2 * HOUR);
+            DeadlineWorker.schedule(context, now + 3 * HOUR);
+            List<WorkInfo> infos = workInfos();
+            assertEquals(1, infos.size());
+            assertEquals(WorkInfo.State.ENQUEUED, infos.get(0).getState());
+        } finally {
+            DeadlineWorker.onWorkFinished(context, true);
+        }
+
+        // Следующая проверка встала за текущей, а не заменила ее
+        List<WorkInfo> infos = workInfos();
+        assertEquals(2, infos.size());
+        for (WorkInfo info : infos) {
+            assertEquals(info.getId().equals(current.getId())
+                    ? WorkInfo.State.ENQUEUED : WorkInfo.State.BLOCKED, info.getState());
+        }
+    }
+
+    @Test
+    public void failedWorkDoesNotChainNextCheck() throws Exception {
+        long now = System.currentTimeMillis();
+        DeadlineWorker.schedule(context, now + HOUR);
+
+        DeadlineWorker.onWorkStarted();
+        DeadlineWorker.schedule(context, now + 2 * HOUR);
+        DeadlineWorker.onWorkFinished(context, false);
+
+        assertEquals(1, workInfos().size());
+    }
+
+    @Test
+    public void schedulerHandsNextDeadlineToWorkManager() throws Exception {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new Task("Истекла", null, now - HOUR, false));
+        tasks.add(new Task("Следующая", null, now + HOUR, false));
+        dbHelper.addTasks(tasks);
+        TaskCache cache = new TaskCache(dbHelper);
+        List<Long> reported = new ArrayList<>();
+        DeadlineScheduler scheduler = new DeadlineScheduler(cache, executor, () -> { },
+                dueDate -> {
+                    reported.add(dueDate);
+                    DeadlineWorker.schedule(context, dueDate);
+                }, (task, dueDate) -> { });
+
+        executor.submit(scheduler::start).get();
+
+        assertEquals(1, reported.size());
+        assertEquals(now + HOUR, (long) reported.get(0));
+        assertEquals(1, count(workInfos(), WorkInfo.State.ENQUEUED));
+
+        // Последняя активная задача удалена - проверять больше нечего
+        int nextId = dbHelper.getAllTasks().stream()
+                .filter(task -> !task.isCompleted())
+                .findFirst().get().getId();
+        executor.submit(() -> {
+            cache.deleteTask(nextId);
+            scheduler.onTaskDeleted(nextId);
+            scheduler.checkDeadlines();
+        }).get();
+
+        assertEquals(Long.MAX_VALUE, (long) reported.get(reported.size() - 1));
+        assertEquals(0, count(workInfos(), WorkInfo.State.ENQUEUED));
+    }
+
+    @Test
+    public void onlyTransientErrorsAreRetried() {
+        assertTrue(DeadlineWorker.isTransient(new SQLiteDatabaseLockedException()));
+        assertFalse(DeadlineWorker.isTransient(new SQLiteConstraintException()));
+        assertFalse(DeadlineWorker.isTransient(new IllegalStateException()));
+    }
+
+    private List<WorkInfo> workInfos() throws Exception {
+        return WorkManager.getInstance(context).getWorkInfosForUniqueWork(DeadlineWorker.WORK_NAME).get();
+    }
+
+    private static int count(List<WorkInfo> infos, WorkInfo.State state) {
+        int count = 0;
+        for (WorkInfo info : infos) {
+            if (info.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ruttasktracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Сервер синхронизации в памяти с той же логикой, что MERGE в JdbcSyncRemote:
+// каждое поле берется из изменения, только если его время новее
+class FakeSyncRemote implements SyncRemote {
+    private final Map<String, TaskChange> rows = new HashMap<>();
+    private final TreeMap<Long, TaskChange> byVersion = new TreeMap<>();
+    private long lastVersion;
+
+    // Сколько изменений пришло и ушло, чтобы проверять, что передаются только дельты
+    int pushedRows;
+    int pushCalls;
+    int pulledRows;
+
+    @Override
+    public void push(List<TaskChange> changes) {
+        pushCalls++;
+        pushedRows += changes.size();
+        for (TaskChange change : changes) {
+            TaskChange row = rows.get(change.syncId);
+            if (row == null) {
+                row = new TaskChange(change.syncId);
+                rows.put(change.syncId, row);
+            } else if (!isNewer(change, row)) {
+                continue;
+            } else {
+                byVersion.remove(row.version);
+            }
+            merge(change, row);
+            row.version = ++lastVersion;
+            byVersion.put(row.version, row);
+        }
+    }
+
+    @Override
+    public List<TaskChange> pull(long watermark, int limit) {
+        List<TaskChange> changes = new ArrayList<>();
+        for (TaskChange row : byVersion.tailMap(watermark, false).values()) {
+            if (changes.size() == limit) {
+                break;
+            }
+            changes.add(copyOf(row));
+        }
+        pulledRows += changes.size();
+        return changes;
+    }
+
+    TaskChange get(String syncId) {
+        return rows.get(syncId);
+    }
+
+    int size() {
+        return rows.size();
+    }
+
+    private static boolean isNewer(TaskChange change, TaskChange row) {
+        for (int field = 0; field < TaskChange.FIELD_COUNT; field++) {
+            if (change.times[field] > row.times[field]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void merge(TaskChange change, TaskChange row) {
+        long[] times = change.times;
+        if (times[TaskChange.TITLE] > row.times[TaskChange.TITLE]) {
+            row.title = change.title;
+        }
+        if (times[TaskChange.DESCRIPTION] > row.times[TaskChange.DESCRIPTION]) {
+            row.description = change.description;
+        }
+        if (times[TaskChange.DUE_DATE] > row.times[TaskChange.DUE_DATE]) {
+            row.dueDate = change.dueDate;
+        }
+        if (times[TaskChange.COMPLETED] > row.times[TaskChange.COMPLETED]) {
+            row.completed = change.completed;
+        }
+        if (times[TaskChange.DELETED] > row.times[TaskChange.DELETED]) {
+            row.deleted = change.deleted;
+        }
+        for (int field = 0; field < TaskChange.FIELD_COUNT; field++) {
+            row.times[field] = Math.max(row.times[field], times[field]);
+        }
+    }
+
+    private static TaskChange copyOf(TaskChange row) {
+        TaskChange copy = new TaskChange(row.syncId);
+        copy.title = row.title;
+        copy.description = row.description;
+        copy.dueDate = row.dueDate;
+        copy.completed = row.completed;
+        copy.deleted = row.deleted;
+        System.arraycopy(row.times, 0, copy.times, 0, TaskChange.FIELD_COUNT);
+        copy.version = row.version;
+        return copy;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.ruttasktracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class FirstScreenSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsFirstScreenOfTasks() throws Exception {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < FirstScreenSnapshot.SIZE + 10; i++) {
+            Task task = new Task("Задача " + i, i % 2 == 0 ? null : "Описание " + i, now + i, i % 3 == 0);
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        tasks.get(1).setRecurrence(new Recurrence(Recurrence.Frequency.WEEKLY, 2, now, 5, 0));
+        FirstScreenSnapshot snapshot = new FirstScreenSnapshot(folder.newFile());
+
+        snapshot.write(tasks);
+        List<Task> read = snapshot.read();
+
+        assertEquals(FirstScreenSnapshot.SIZE, read.size());
+        for (int i = 0; i < read.size(); i++) {
+            Task expected = tasks.get(i);
+            Task actual = read.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getDueDate(), actual.getDueDate());
+            assertEquals(expected.isCompleted(), actual.isCompleted());
+            assertEquals(expected.getRecurrence(), actual.getRecurrence());
+        }
+    }
+
+    @Test
+    public void missingOrDamagedSnapshotIsEmpty() throws Exception {
+        File file = new File(folder.getRoot(), "first_screen.bin");
+        assertTrue(new FirstScreenSnapshot(file).read().isEmpty());
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{0, 0, 0, 1, 0, 0, 0, 5, 1});
+        }
+        assertTrue(new FirstScreenSnapshot(file).read().isEmpty());
+    }
+}
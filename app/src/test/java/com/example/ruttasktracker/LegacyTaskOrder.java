@@ -0,0 +1,51 @@
+package com.example.ruttasktracker;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Прежняя сортировка списка из MainActivity.loadTasks. TaskOrderTest сверяет с ней
+// порядок getTasksOrdered, PipelineBenchmark замеряет ее рядом с выборкой из базы
+final class LegacyTaskOrder {
+    private LegacyTaskOrder() {
+    }
+
+    // Повторяет прежний компаратор: две строки разбираются при каждом сравнении.
+    // Текущее время зафиксировано, чтобы порядок не зависел от длительности сортировки
+    static List<Task> sort(List<Task> tasks, long now) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DueDateFormat.PATTERN, Locale.getDefault());
+        List<String> dueDates = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            dueDates.add(dateFormat.format(new Date(task.getDueDate())));
+        }
+        List<Integer> order = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            order.add(i);
+        }
+        Date nowDate = new Date(now);
+        Collections.sort(order, (index1, index2) -> {
+            try {
+                Date date1 = dateFormat.parse(dueDates.get(index1));
+                Date date2 = dateFormat.parse(dueDates.get(index2));
+                boolean isTask1Overdue = date1.before(nowDate) || tasks.get(index1).isCompleted();
+                boolean isTask2Overdue = date2.before(nowDate) || tasks.get(index2).isCompleted();
+
+                if (isTask1Overdue && !isTask2Overdue) return 1;
+                if (!isTask1Overdue && isTask2Overdue) return -1;
+                return date1.compareTo(date2);
+            } catch (ParseException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        List<Task> sorted = new ArrayList<>(tasks.size());
+        for (int index : order) {
+            sorted.add(tasks.get(index));
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.ruttasktracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class MetricsTest {
+
+    @Before
+    public void setUp() {
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+    }
+
+    @Test
+    public void bucketBoundsCoverEveryValue() {
+        long[] values = {0, 1, 3, 4, 5, 7, 8, 1_000, 65_535, 1_000_000_007L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = Metrics.Operation.bucketOf(value);
+            assertTrue("значение " + value, value <= Metrics.Operation.bucketUpperBound(bucket));
+            if (bucket > 0) {
+                assertTrue("значение " + value, value > Metrics.Operation.bucketUpperBound(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void bucketsAreWithinAQuarterOfTheValue() {
+        for (long value = 4; value < 1L << 40; value = value * 3 + 1) {
+            long upper = Metrics.Operation.bucketUpperBound(Metrics.Operation.bucketOf(value));
+            assertTrue("значение " + value + ", граница " + upper, upper - value <= value / 4);
+        }
+    }
+
+    @Test
+    public void dumpReportsCountRowsAndPercentiles() {
+        // 99 быстрых вызовов по 1 строке и один медленный на 10 строк
+        for (int i = 0; i < 99; i++) {
+            Metrics.DB_GET_ALL_TASKS.end(Metrics.DB_GET_ALL_TASKS.begin(), 1);
+        }
+        Metrics.DB_GET_ALL_TASKS.end(Metrics.DB_GET_ALL_TASKS.begin() - 50_000_000L, 10);
+
+        String line = dumpLine("db.getAllTasks");
+        String[] fields = line.split(" ");
+        assertEquals("100", fields[1]);
+        assertEquals("109", fields[2]);
+        double p50 = Double.parseDouble(fields[3]);
+        double p99 = Double.parseDouble(fields[5]);
+        double max = Double.parseDouble(fields[6]);
+        assertTrue(line, p50 < 1_000);
+        assertTrue(line, p99 < 1_000);
+        assertTrue(line, max >= 50_000);
+    }
+
+    private static String dumpLine(String operation) {
+        StringWriter output = new StringWriter();
+        Metrics.dump(new PrintWriter(output));
+        for (String line : output.toString().split("\n")) {
+            if (line.startsWith(operation + " ")) {
+                return line;
+            }
+        }
+        throw new AssertionError("нет строки " + operation + " в\n" + output);
+    }
+}
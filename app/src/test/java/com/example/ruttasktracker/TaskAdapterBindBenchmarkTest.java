@@ -0,0 +1,103 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.widget.FrameLayout;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+// Сравнивает число байт, выделенных за одну привязку, с тем, что выделяют сами view
+// при установке тех же значений. Разница - это расходы кода адаптера.
+// Тексты измеряются заранее в том же потоке, поэтому все привязки попадают в кэш
+@RunWith(RobolectricTestRunner.class)
+public class TaskAdapterBindBenchmarkTest {
+    private static final int TASK_COUNT = 1_000;
+    private static final int ROUNDS = 20;
+    private static final long MINUTE = 60_000L;
+    // Допуск на шум измерения, на порядок меньше одного SimpleDateFormat
+    private static final long MAX_ADAPTER_BYTES_PER_BIND = 64;
+
+    private TaskAdapter adapter;
+    private TaskAdapter.TaskViewHolder holder;
+    private List<Task> tasks;
+    private List<TaskTextCache.Entry> texts;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        adapter = new TaskAdapter(context, (task, isChecked) -> { }, task -> { }, task -> { }, Runnable::run);
+        holder = adapter.onCreateViewHolder(new FrameLayout(context), 0);
+
+        tasks = new ArrayList<>(TASK_COUNT);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            Task task = new Task("Задача " + i, "Описание задачи " + i, now + (i - TASK_COUNT / 2) * MINUTE, i % 3 == 0);
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        TaskAdapter.prepareForBind(tasks);
+        adapter.submitList(tasks);
+        adapter.prefetch(0, TASK_COUNT - 1);
+
+        // Готовые тексты, которые привязка передает в view
+        TaskTextCache textCache = new TaskTextCache(Runnable::run, TaskTextCache.DEFAULT_MAX_CHARS);
+        textCache.setParams(holder.txtTitle, holder.txtDescription, holder.txtDueDate);
+        texts = new ArrayList<>(TASK_COUNT);
+        for (Task task : tasks) {
+            boolean struck = task.isCompleted() || task.getDueDate() < now;
+            textCache.prefetch(task, struck);
+            texts.add(textCache.get(task, struck));
+        }
+    }
+
+    @Test
+    public void bindAllocatesNoMoreThanTheViewsThemselves() {
+        // Прогрев: JIT и внутренние буферы view
+        bindAll();
+        setViewsDirectly();
+
+        long adapterBytes = allocatedBytes(this::bindAll);
+        long viewBytes = allocatedBytes(this::setViewsDirectly);
+        long binds = (long) TASK_COUNT * ROUNDS;
+        long perBind = (adapterBytes - viewBytes) / binds;
+
+        assertTrue("адаптер выделяет " + perBind + " байт на привязку", perBind <= MAX_ADAPTER_BYTES_PER_BIND);
+    }
+
+    private void bindAll() {
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int position = 0; position < TASK_COUNT; position++) {
+                adapter.onBindViewHolder(holder, position);
+            }
+        }
+    }
+
+    // То же, что делает onBindViewHolder, но без адаптера
+    private void setViewsDirectly() {
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int position = 0; position < TASK_COUNT; position++) {
+                texts.get(position).apply(holder.txtTitle, holder.txtDescription, holder.txtDueDate);
+                holder.checkboxCompleted.setChecked(tasks.get(position).isCompleted());
+            }
+        }
+    }
+
+    private static long allocatedBytes(Runnable action) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        action.run();
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+}
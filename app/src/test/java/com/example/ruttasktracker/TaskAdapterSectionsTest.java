@@ -0,0 +1,69 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskAdapterSectionsTest {
+    private static final long DAY = 24 * 60 * 60_000L;
+
+    @Test
+    public void headerOpensEachSectionOfMainList() {
+        long now = System.currentTimeMillis();
+        long todayEnd = TaskSummary.endOfDay(now);
+        long weekEnd = TaskSummary.endOfWeek(now);
+        // Порядок основного списка: активные по сроку, затем просроченные и выполненные
+        List<Task> tasks = new ArrayList<>();
+        List<Integer> expectedSections = new ArrayList<>();
+        addTasks(tasks, expectedSections, now + (todayEnd - now) / 2, false, TaskAdapter.SECTION_TODAY);
+        if (weekEnd > todayEnd + DAY) {
+            addTasks(tasks, expectedSections, todayEnd + DAY, false, TaskAdapter.SECTION_THIS_WEEK);
+        }
+        addTasks(tasks, expectedSections, weekEnd + DAY, false, TaskAdapter.SECTION_LATER);
+        addTasks(tasks, expectedSections, now - DAY, false, TaskAdapter.SECTION_PAST);
+        addTasks(tasks, expectedSections, now + DAY, true, TaskAdapter.SECTION_PAST);
+
+        TaskAdapter adapter = new TaskAdapter(ApplicationProvider.getApplicationContext(),
+                (task, isChecked) -> { }, task -> { }, task -> { }, Runnable::run);
+        adapter.submitList(tasks);
+        adapter.setSectionsShown(true, true);
+
+        for (int position = 0; position < tasks.size(); position++) {
+            assertEquals("позиция " + position, (int) expectedSections.get(position), adapter.getSection(position));
+            boolean opensSection = position == 0
+                    || !expectedSections.get(position).equals(expectedSections.get(position - 1));
+            assertEquals("позиция " + position, opensSection, adapter.isSectionStart(position));
+        }
+
+        // Окно не с начала списка: раздел первой строки мог начаться раньше
+        adapter.setSectionsShown(true, false);
+        assertFalse(adapter.isSectionStart(0));
+        assertTrue(adapter.isSectionStart(2));
+
+        // Результаты поиска без заголовков
+        adapter.setSectionsShown(false, false);
+        for (int position = 0; position < tasks.size(); position++) {
+            assertFalse(adapter.isSectionStart(position));
+        }
+    }
+
+    private static void addTasks(List<Task> tasks, List<Integer> sections, long dueDate, boolean completed,
+                                 int section) {
+        for (int i = 0; i < 2; i++) {
+            Task task = new Task("Задача " + tasks.size(), null, dueDate + i, completed);
+            task.setId(tasks.size() + 1);
+            tasks.add(task);
+            sections.add(section);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.ruttasktracker;
+
+import android.database.DatabaseUtils;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskArchiveTest {
+    private static final long DAY = 24 * 60 * 60_000L;
+    private static final int PAGE_SIZE = 20;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void archiveMovesOnlyTasksOlderThanCutoff() {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Сроки от 60 дней назад до 39 дней вперед
+            tasks.add(new Task("Задача " + i, "Описание " + i, now + (i - 60) * DAY, i % 2 == 0));
+        }
+        dbHelper.addTasks(tasks);
+
+        long cutoff = now - 30 * DAY;
+        long[] first = dbHelper.archiveTasks(cutoff, 20, now);
+        long[] second = dbHelper.archiveTasks(cutoff, 20, now);
+        long[] rest = dbHelper.archiveTasks(cutoff, 20, now);
+
+        assertEquals(20, first.length);
+        assertEquals(10, second.length);
+        assertEquals(0, rest.length);
+        List<Task> live = dbHelper.getAllTasks();
+        assertEquals(70, live.size());
+        for (Task task : live) {
+            assertTrue(task.getDueDate() >= cutoff);
+        }
+        // Перенесенные задачи больше не находятся поиском
+        assertTrue(dbHelper.search("Задача 0", 10).isEmpty());
+    }
+
+    @Test
+    public void archivePagesGoFromNewestToOldest() {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // Пары с одинаковым сроком проверяют порядок по id
+            tasks.add(new Task("Задача " + i, null, now - (100 + i / 2) * DAY, true));
+        }
+        dbHelper.addTasks(tasks);
+        dbHelper.archiveTasks(now, 100, now);
+
+        List<Task> all = new ArrayList<>();
+        List<Task> page = dbHelper.getArchivedTasksAfter(null, false, PAGE_SIZE);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            page = dbHelper.getArchivedTasksAfter(page.get(page.size() - 1), false, PAGE_SIZE);
+        }
+        assertEquals(50, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            Task previous = all.get(i - 1);
+            Task current = all.get(i);
+            assertTrue(previous.getDueDate() > current.getDueDate()
+                    || previous.getDueDate() == current.getDueDate() && previous.getId() > current.getId());
+        }
+
+        Task key = all.get(30);
+        List<Task> before = dbHelper.getArchivedTasksBefore(key, PAGE_SIZE);
+        assertEquals(PAGE_SIZE, before.size());
+        assertEquals(all.get(10).getId(), before.get(0).getId());
+        assertEquals(all.get(29).getId(), before.get(PAGE_SIZE - 1).getId());
+        assertEquals(key.getId(), dbHelper.getArchivedTasksAfter(key, true, 1).get(0).getId());
+    }
+
+    @Test
+    public void cacheDropsArchivedTasks() {
+        long now = System.currentTimeMillis();
+        TaskCache cache = new TaskCache(dbHelper);
+        cache.addTask(new Task("Старая", null, now - 40 * DAY, true));
+        int recent = (int) cache.addTask(new Task("Новая", null, now + DAY, false));
+
+        assertEquals(1, cache.archiveTasks(now - 30 * DAY, 10, now));
+
+        assertEquals(1, cache.size());
+        List<Task> page = cache.getTasksAfter(now, null, false, PAGE_SIZE);
+        assertEquals(1, page.size());
+        assertEquals(recent, page.get(0).getId());
+        assertEquals(1, dbHelper.getArchivedTasksAfter(null, false, PAGE_SIZE).size());
+    }
+
+    @Test
+    public void compactEnablesIncrementalVacuumAndFreesPages() {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            description.append("длинное описание ");
+        }
+        for (int i = 0; i < 500; i++) {
+            tasks.add(new Task("Задача " + i, description.toString(), now - 40 * DAY, true));
+        }
+        dbHelper.addTasks(tasks);
+
+        dbHelper.compact(Integer.MAX_VALUE);
+        assertEquals(2, DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(), "PRAGMA auto_vacuum", null));
+
+        dbHelper.getWritableDatabase().delete("tasks", null, null);
+        assertTrue(freePages() > 0);
+        dbHelper.compact(Integer.MAX_VALUE);
+        assertEquals(0, freePages());
+    }
+
+    private long freePages() {
+        return DatabaseUtils.longForQuery(dbHelper.getReadableDatabase(), "PRAGMA freelist_count", null);
+    }
+}
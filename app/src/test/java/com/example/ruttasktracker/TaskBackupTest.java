@@ -0,0 +1,132 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskBackupTest {
+    // Больше одной пачки, чтобы выгрузка состояла из нескольких блоков
+    private static final int TASK_COUNT = TaskBackup.BATCH_SIZE * 2 + 17;
+    private static final long MINUTE = 60_000L;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void binaryRoundTripKeepsEveryField() throws IOException {
+        assertRoundTrip(TaskBackup.Format.BINARY);
+    }
+
+    @Test
+    public void jsonLinesRoundTripKeepsEveryField() throws IOException {
+        assertRoundTrip(TaskBackup.Format.JSON_LINES);
+    }
+
+    @Test
+    public void binaryImportRejectsCorruptedBlock() throws IOException {
+        dbHelper.addTasks(createTasks(10));
+        byte[] data = export(TaskBackup.Format.BINARY);
+        // Первый байт данных первого блока: после заголовка (8) и заголовка блока (8)
+        data[16] ^= 0x5A;
+
+        assertImportFails(data);
+        assertTrue(dbHelper.getAllTasks().isEmpty());
+    }
+
+    @Test
+    public void binaryImportRejectsUnknownVersion() throws IOException {
+        byte[] data = export(TaskBackup.Format.BINARY);
+        data[7] = (byte) (TaskBackup.VERSION + 1);
+
+        assertImportFails(data);
+    }
+
+    @Test
+    public void binaryImportRejectsTruncatedFile() throws IOException {
+        dbHelper.addTasks(createTasks(10));
+        byte[] data = export(TaskBackup.Format.BINARY);
+        byte[] truncated = new byte[data.length - 6];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        assertImportFails(truncated);
+    }
+
+    private void assertRoundTrip(TaskBackup.Format format) throws IOException {
+        List<Task> tasks = createTasks(TASK_COUNT);
+        dbHelper.addTasks(tasks);
+        byte[] data = export(format);
+
+        clearTasks();
+        long imported = TaskBackup.importTasks(dbHelper,
+                Channels.newChannel(new ByteArrayInputStream(data)), format);
+
+        assertEquals(TASK_COUNT, imported);
+        List<Task> restored = dbHelper.getAllTasks();
+        assertEquals(TASK_COUNT, restored.size());
+        for (int i = 0; i < TASK_COUNT; i++) {
+            Task expected = tasks.get(i);
+            Task actual = restored.get(i);
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getDueDate(), actual.getDueDate());
+            assertEquals(expected.isCompleted(), actual.isCompleted());
+        }
+    }
+
+    private void assertImportFails(byte[] data) {
+        clearTasks();
+        try {
+            TaskBackup.importTasks(dbHelper, Channels.newChannel(new ByteArrayInputStream(data)),
+                    TaskBackup.Format.BINARY);
+            fail("поврежденный файл загружен");
+        } catch (IOException expected) {
+            // ожидаемо
+        }
+    }
+
+    private byte[] export(TaskBackup.Format format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TaskBackup.exportTasks(dbHelper, Channels.newChannel(output), format);
+        return output.toByteArray();
+    }
+
+    private void clearTasks() {
+        dbHelper.getWritableDatabase().delete("tasks", null, null);
+    }
+
+    private static List<Task> createTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            // Пустое описание, кавычки и перевод строки проверяют экранирование в JSON
+            String description = i % 7 == 0 ? null : "Описание \"" + i + "\"\nвторая строка ✓";
+            tasks.add(new Task("Задача " + i, description, now + (i - count / 2) * MINUTE, i % 3 == 0));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskCacheTest {
+    private static final int TASK_COUNT = 5_000;
+    private static final int PAGE_SIZE = 50;
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void pagesMatchDatabaseOrder() {
+        long now = System.currentTimeMillis();
+        insertTasks(TASK_COUNT, now);
+        TaskCache cache = new TaskCache(dbHelper);
+
+        List<Task> ordered = dbHelper.getTasksOrdered(now);
+        assertSamePage(dbHelper.getTasksAfter(now, null, false, PAGE_SIZE),
+                cache.getTasksAfter(now, null, false, PAGE_SIZE));
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            Task key = ordered.get(random.nextInt(ordered.size()));
+            boolean inclusive = random.nextBoolean();
+            assertSamePage(dbHelper.getTasksAfter(now, key, inclusive, PAGE_SIZE),
+                    cache.getTasksAfter(now, key, inclusive, PAGE_SIZE));
+            assertSamePage(dbHelper.getTasksBefore(now, key, PAGE_SIZE),
+                    cache.getTasksBefore(now, key, PAGE_SIZE));
+        }
+    }
+
+    @Test
+    public void writesGoThroughToDatabaseAndMemory() {
+        long now = System.currentTimeMillis();
+        TaskCache cache = new TaskCache(dbHelper);
+        int first = (int) cache.addTask(new Task("Первая", "Описание", now + MINUTE, false));
+        int second = (int) cache.addTask(new Task("Вторая", "Описание", now + 2 * MINUTE, false));
+
+        Task updated = new Task("Первая, позже", "Описание", now + 3 * MINUTE, false);
+        updated.setId(first);
+        cache.updateTask(updated);
+        cache.updateCompleted(new long[]{second}, true);
+
+        List<Task> fromCache = cache.getTasksAfter(now, null, false, PAGE_SIZE);
+        assertSamePage(dbHelper.getTasksAfter(now, null, false, PAGE_SIZE), fromCache);
+        assertEquals("Первая, позже", fromCache.get(0).getTitle());
+        assertTrue(fromCache.get(1).isCompleted());
+
+        cache.deleteTask(first);
+        assertEquals(1, cache.size());
+        assertEquals(1, dbHelper.getAllTasks().size());
+    }
+
+    @Test
+    public void completeOverdueTasksMatchesDatabase() {
+        long now = System.currentTimeMillis();
+        insertTasks(1_000, now);
+        TaskCache cache = new TaskCache(dbHelper);
+
+        cache.completeOverdueTasks(now);
+
+        assertSamePage(dbHelper.getTasksAfter(now, null, false, 1_000),
+                cache.getTasksAfter(now, null, false, 1_000));
+        List<Long> deadlines = new ArrayList<>();
+        cache.readActiveDeadlines(now, (taskId, dueDate) -> deadlines.add(dueDate));
+        for (int i = 1; i < deadlines.size(); i++) {
+            assertTrue(deadlines.get(i - 1) <= deadlines.get(i));
+        }
+    }
+
+    @Test
+    public void evictedDescriptionsAreReadBackFromDatabase() {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            tasks.add(new Task("Задача " + i, "Описание выполненной задачи " + i, now - i * MINUTE, true));
+        }
+        dbHelper.addTasks(tasks);
+        // Бюджета хватает примерно на сотню описаний
+        TaskCache cache = new TaskCache(dbHelper, 2_000);
+
+        assertTrue("в памяти " + cache.getDescriptionChars(), cache.getDescriptionChars() <= 2_000);
+        assertSamePage(dbHelper.getTasksAfter(now, null, false, 1_000),
+                cache.getTasksAfter(now, null, false, 1_000));
+    }
+
+    @Test
+    public void evictedDescriptionSurvivesRecurringRecompletion() {
+        long now = System.currentTimeMillis();
+        // Серия из одного повторения уже завершена; срок самый давний, поэтому
+        // ее описание вытесняется первым
+        Recurrence rule = new Recurrence(Recurrence.Frequency.DAILY, 1, now - 10 * DAY, 1, 0);
+        Task recurring = new Task("Повтор", "Описание повторяющейся задачи", rule.getStart(), true);
+        recurring.setRecurrence(rule);
+        long[] recurringId = {dbHelper.addTask(recurring)};
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(new Task("Задача " + i, "Описание выполненной задачи " + i, now - i * MINUTE, true));
+        }
+        dbHelper.addTasks(tasks);
+        TaskCache cache = new TaskCache(dbHelper, 500);
+        assertTrue("в памяти " + cache.getDescriptionChars(), cache.getDescriptionChars() <= 500);
+
+        // Снятая отметка и повторное выполнение: серия снова завершается
+        cache.updateCompleted(recurringId, false);
+        cache.updateCompleted(recurringId, true);
+        assertSamePage(dbHelper.getTasksAfter(now, null, false, 200),
+                cache.getTasksAfter(now, null, false, 200));
+
+        // Снятая отметка и истекший срок: планировщик завершает серию сам
+        cache.updateCompleted(recurringId, false);
+        cache.completeOverdueTasks(now);
+        List<Task> page = cache.getTasksAfter(now, null, false, 200);
+        assertSamePage(dbHelper.getTasksAfter(now, null, false, 200), page);
+        for (Task task : page) {
+            if (task.getId() == recurringId[0]) {
+                assertTrue(task.isCompleted());
+                assertEquals("Описание повторяющейся задачи", task.getDescription());
+            }
+        }
+    }
+
+    @Test
+    public void activeDescriptionsOverBudgetDoNotRescanEvicted() {
+        long now = System.currentTimeMillis();
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            padding.append("Длинное описание. ");
+        }
+        List<Task> tasks = new ArrayList<>();
+        long activeChars = 0;
+        int completedCount = 0;
+        for (int i = 0; i < 30_000; i++) {
+            boolean completed = i % 4 == 0;
+            String description = padding + "Задача " + i;
+            tasks.add(new Task("Задача " + i, description, now + (i - 15_000) * MINUTE, completed));
+            if (completed) {
+                completedCount++;
+            } else {
+                activeChars += description.length();
+            }
+        }
+        dbHelper.addTasks(tasks);
+        // Одни описания активных задач больше бюджета
+        long budget = activeChars / 2;
+        TaskCache cache = new TaskCache(dbHelper, budget);
+
+        assertEquals(tasks.size(), cache.size());
+        // Описания выполненных вытеснены все, активные хранятся целиком
+        assertEquals(activeChars, cache.getDescriptionChars());
+        // Вытеснение после загрузки прошло по каждой выполненной задаче ровно один раз
+        assertEquals(completedCount, cache.getEvictedDescriptions());
+
+        // Каждая запись после загрузки тоже не проходит заново по вытесненным:
+        // просматривается только описание задачи, которая сейчас стала выполненной
+        int newlyCompleted = 0;
+        for (int id = 1; id <= 2_000; id++) {
+            if (!tasks.get(id - 1).isCompleted()) {
+                newlyCompleted++;
+            }
+            cache.setCompletedInMemory(id, true);
+        }
+        assertEquals(completedCount + newlyCompleted, cache.getEvictedDescriptions());
+        assertTrue("в памяти " + cache.getDescriptionChars(), cache.getDescriptionChars() <= activeChars);
+    }
+
+    private static void assertSamePage(List<Task> expected, List<Task> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Task expectedTask = expected.get(i);
+            Task actualTask = actual.get(i);
+            assertEquals("позиция " + i, expectedTask.getId(), actualTask.getId());
+            assertEquals(expectedTask.getTitle(), actualTask.getTitle());
+            assertEquals(expectedTask.getDescription(), actualTask.getDescription());
+            assertEquals(expectedTask.getDueDate(), actualTask.getDueDate());
+            assertEquals(expectedTask.isCompleted(), actualTask.isCompleted());
+        }
+    }
+
+    private void insertTasks(int count, long now) {
+        // Сроки кратны минуте и повторяются, чтобы порядок внутри одного срока решал id
+        Random random = new Random(11);
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long dueDate = now + (random.nextInt(200) - 100) * MINUTE;
+            tasks.add(new Task("Задача " + i, "Описание задачи " + i, dueDate, random.nextInt(3) == 0));
+        }
+        dbHelper.addTasks(tasks);
+    }
+}
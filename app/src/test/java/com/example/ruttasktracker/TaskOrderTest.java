@@ -0,0 +1,77 @@
+package com.example.ruttasktracker;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Упорядоченная выборка DatabaseHelper.getTasksOrdered дает тот же порядок, что и
+ * прежняя сортировка в памяти (LegacyTaskOrder). Время обеих замеряет PipelineBenchmark.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskOrderTest {
+    private static final int SIZE = 500;
+    private static final long MINUTE = 60_000L;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void sqlOrderMatchesInMemorySort() {
+        // Старый формат хранил срок с точностью до минуты
+        long now = System.currentTimeMillis() / MINUTE * MINUTE;
+        fillTasks(now);
+
+        List<Task> sortedInMemory = LegacyTaskOrder.sort(dbHelper.getAllTasks(), now);
+        List<Task> sortedInSql = dbHelper.getTasksOrdered(now);
+
+        assertEquals(SIZE, sortedInSql.size());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals("позиция " + i, sortedInMemory.get(i).getId(), sortedInSql.get(i).getId());
+        }
+    }
+
+    // Сроки с разбросом в обе стороны от now, четверть задач выполнена. Диапазон
+    // уже числа задач, поэтому одинаковые сроки тоже встречаются
+    private void fillTasks(long now) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement insert = db.compileStatement(
+                    "INSERT INTO tasks (title, description, due_date, completed) VALUES (?, ?, ?, ?)");
+            Random random = new Random(42);
+            for (int i = 0; i < SIZE; i++) {
+                insert.bindString(1, "Задача " + i);
+                insert.bindString(2, "Описание задачи " + i);
+                insert.bindLong(3, now + (random.nextInt(200) - 100) * MINUTE);
+                insert.bindLong(4, random.nextInt(4) == 0 ? 1 : 0);
+                insert.executeInsert();
+            }
+            insert.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
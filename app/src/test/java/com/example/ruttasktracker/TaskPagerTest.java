@@ -0,0 +1,150 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskPagerTest {
+    private static final int TASK_COUNT = 100_000;
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 4;
+    private static final long MINUTE = 60_000L;
+
+    private DatabaseHelper dbHelper;
+    private TaskPager pager;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+        // Загрузки выполняются сразу в вызывающем потоке
+        pager = new TaskPager(dbHelper, Runnable::run, Runnable::run, PAGE_SIZE, MAX_PAGES);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    // Проверяется размер окна в задачах, а не занятая память. Каждый новый участок окна
+    // сравнивается со страницей keyset-запроса после последней просмотренной задачи,
+    // поэтому весь список в тесте тоже не загружается
+    @Test
+    public void windowStaysBoundedWhileScrollingAllTasks() {
+        insertTasks(TASK_COUNT);
+        long now = System.currentTimeMillis();
+
+        pager.refresh();
+        Task lastSeen = null;
+        int visited = 0;
+        int maxWindowSize = 0;
+        List<Task> window = pager.getWindow().getValue();
+        while (true) {
+            maxWindowSize = Math.max(maxWindowSize, window.size());
+            List<Task> unseen = window.subList(indexAfter(window, lastSeen), window.size());
+            assertSameIds(dbHelper.getTasksAfter(now, lastSeen, false, unseen.size()), unseen, visited);
+            if (!unseen.isEmpty()) {
+                lastSeen = unseen.get(unseen.size() - 1);
+                visited += unseen.size();
+            }
+            pager.onScrolled(window.size() - 2, window.size() - 1);
+            List<Task> next = pager.getWindow().getValue();
+            if (next == window) {
+                break;
+            }
+            window = next;
+        }
+
+        assertTrue("окно выросло до " + maxWindowSize, maxWindowSize <= PAGE_SIZE * MAX_PAGES);
+        assertEquals(TASK_COUNT, visited);
+        assertTrue(dbHelper.getTasksAfter(now, lastSeen, false, 1).isEmpty());
+
+        // Возврат к началу списка перечитывает выброшенные страницы
+        while (true) {
+            pager.onScrolled(0, 1);
+            List<Task> previous = pager.getWindow().getValue();
+            if (previous == window) {
+                break;
+            }
+            assertTrue(previous.size() <= PAGE_SIZE * MAX_PAGES);
+            window = previous;
+        }
+        assertSameIds(dbHelper.getTasksAfter(now, null, false, PAGE_SIZE), window.subList(0, PAGE_SIZE), 0);
+    }
+
+    @Test
+    public void refreshKeepsWindowPositionAfterDelete() {
+        insertTasks(1_000);
+        pager.refresh();
+        for (int i = 0; i < MAX_PAGES + 2; i++) {
+            List<Task> window = pager.getWindow().getValue();
+            pager.onScrolled(window.size() - 2, window.size() - 1);
+        }
+        List<Task> window = pager.getWindow().getValue();
+        Task first = window.get(0);
+        Task second = window.get(1);
+
+        dbHelper.deleteTask(first.getId());
+        pager.onTasksChanged();
+
+        assertEquals(second.getId(), pager.getWindow().getValue().get(0).getId());
+    }
+
+    @Test
+    public void firstRefreshPublishesOneScreenBeforeFullPage() {
+        insertTasks(1_000);
+        List<Integer> sizes = new ArrayList<>();
+        pager.getWindow().observeForever(window -> sizes.add(window.size()));
+
+        pager.refresh();
+
+        assertEquals(2, sizes.size());
+        assertEquals(TaskPager.FIRST_PAGE_SIZE, (int) sizes.get(0));
+        assertEquals(TaskPager.FIRST_PAGE_SIZE + PAGE_SIZE, (int) sizes.get(1));
+        assertTrue(pager.isAtStart());
+    }
+
+    // Позиция в окне сразу после задачи key; 0, если key еще нет
+    private static int indexAfter(List<Task> window, Task key) {
+        if (key == null) {
+            return 0;
+        }
+        int index = 0;
+        while (window.get(index).getId() != key.getId()) {
+            index++;
+        }
+        return index + 1;
+    }
+
+    private static void assertSameIds(List<Task> expected, List<Task> actual, int offset) {
+        assertEquals("задач с позиции " + offset, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("позиция " + (offset + i), expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+
+    private void insertTasks(int count) {
+        // Сроки отстоят от текущего момента минимум на минуту,
+        // чтобы группа задачи не зависела от времени чтения
+        long now = System.currentTimeMillis();
+        Random random = new Random(7);
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long offset = (random.nextInt(10_000) + 1) * MINUTE;
+            long dueDate = random.nextBoolean() ? now + offset : now - offset;
+            tasks.add(new Task("Задача " + i, "Описание задачи " + i, dueDate, random.nextInt(5) == 0));
+        }
+        dbHelper.addTasks(tasks);
+    }
+}
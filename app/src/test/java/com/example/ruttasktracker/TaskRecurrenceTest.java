@@ -0,0 +1,190 @@
+package com.example.ruttasktracker;
+
+import android.database.DatabaseUtils;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskRecurrenceTest {
+    private static final long HOUR = 60 * 60_000L;
+    private static final long DAY = 24 * HOUR;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void monthlyRuleKeepsDayOfMonthAndStopsAfterCount() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2026, Calendar.JANUARY, 31, 10, 0);
+        Recurrence rule = new Recurrence(Recurrence.Frequency.MONTHLY, 1, calendar.getTimeInMillis(), 3, 0);
+
+        calendar.setTimeInMillis(rule.occurrence(1));
+        assertEquals(Calendar.FEBRUARY, calendar.get(Calendar.MONTH));
+        assertEquals(28, calendar.get(Calendar.DAY_OF_MONTH));
+        // Следующее повторение снова 31-го, а не 28-го
+        calendar.setTimeInMillis(rule.occurrence(2));
+        assertEquals(31, calendar.get(Calendar.DAY_OF_MONTH));
+        assertEquals(10, calendar.get(Calendar.HOUR_OF_DAY));
+        assertEquals(Recurrence.NONE, rule.occurrence(3));
+
+        assertEquals(rule.occurrence(1), rule.occurrenceAfter(rule.occurrence(0)));
+        assertEquals(rule.occurrence(2), rule.occurrenceAfter(rule.occurrence(1) + 1));
+        assertEquals(Recurrence.NONE, rule.occurrenceAfter(rule.occurrence(2)));
+        assertEquals(rule, Recurrence.parse(rule.toString()));
+    }
+
+    @Test
+    public void completedOccurrencesDoNotAddTaskRows() {
+        long start = System.currentTimeMillis() + HOUR;
+        Recurrence rule = new Recurrence(Recurrence.Frequency.DAILY, 1, start, 0, 0);
+        int id = (int) dbHelper.addTask(recurring("Зарядка", rule));
+
+        for (int i = 0; i < 3; i++) {
+            dbHelper.updateCompleted(new long[]{id}, true);
+        }
+
+        List<Task> tasks = dbHelper.getAllTasks();
+        assertEquals(1, tasks.size());
+        assertFalse(tasks.get(0).isCompleted());
+        assertEquals(rule.occurrence(3), tasks.get(0).getDueDate());
+        assertEquals(3, occurrenceRows());
+
+        // Окно на неделю вычисляется по правилу, строк под него не создается
+        List<Task> week = dbHelper.getOccurrences(tasks.get(0), start, start + 7 * DAY, 100);
+        assertEquals(7, week.size());
+        for (int i = 0; i < week.size(); i++) {
+            assertEquals(rule.occurrence(i), week.get(i).getDueDate());
+            assertEquals("повторение " + i, i < 3, week.get(i).isCompleted());
+        }
+        assertEquals(2, dbHelper.getOccurrences(tasks.get(0), start, start + 7 * DAY, 2).size());
+    }
+
+    @Test
+    public void lastOccurrenceCompletesSeries() {
+        long start = System.currentTimeMillis() + HOUR;
+        Recurrence rule = new Recurrence(Recurrence.Frequency.WEEKLY, 1, start, 2, 0);
+        int id = (int) dbHelper.addTask(recurring("Отчет", rule));
+
+        dbHelper.updateCompleted(new long[]{id}, true);
+        dbHelper.updateCompleted(new long[]{id}, true);
+        Task task = dbHelper.getAllTasks().get(0);
+        assertTrue(task.isCompleted());
+        assertEquals(rule.occurrence(1), task.getDueDate());
+        assertEquals(2, occurrenceRows());
+
+        // Снятая отметка возвращает только последнее повторение
+        dbHelper.updateCompleted(new long[]{id}, false);
+        task = dbHelper.getAllTasks().get(0);
+        assertFalse(task.isCompleted());
+        assertEquals(rule.occurrence(1), task.getDueDate());
+        assertEquals(1, occurrenceRows());
+    }
+
+    @Test
+    public void expiredOccurrencesAreSkippedWithoutRecords() {
+        long now = System.currentTimeMillis();
+        Recurrence rule = new Recurrence(Recurrence.Frequency.DAILY, 1, now - 10 * DAY - HOUR, 0, 0);
+        dbHelper.addTask(recurring("Полив", rule));
+        dbHelper.addTask(new Task("Разовая", null, now - HOUR, false));
+
+        assertEquals(2, dbHelper.completeOverdueTasks(now));
+
+        for (Task task : dbHelper.getAllTasks()) {
+            if (task.getRecurrence() == null) {
+                assertTrue(task.isCompleted());
+            } else {
+                assertFalse(task.isCompleted());
+                assertEquals(rule.occurrenceAfter(now - 1), task.getDueDate());
+            }
+        }
+        assertEquals(0, occurrenceRows());
+    }
+
+    @Test
+    public void cacheFollowsDatabase() {
+        long now = System.currentTimeMillis();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            long start = now + (i - 25) * HOUR;
+            Task task = i % 2 == 0
+                    ? recurring("Повтор " + i, new Recurrence(Recurrence.Frequency.DAILY, 1, start, 5, 0))
+                    : new Task("Разовая " + i, null, start, false);
+            tasks.add(task);
+        }
+        dbHelper.addTasks(tasks);
+        TaskCache cache = new TaskCache(dbHelper);
+
+        List<Long> advanced = new ArrayList<>();
+        cache.completeOverdueTasks(now, (task, dueDate) -> {
+            if (!task.isCompleted()) {
+                advanced.add(task.getDueDate());
+            }
+        });
+        long[] ids = new long[10];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        cache.updateCompleted(ids, true);
+
+        assertEquals(13, advanced.size());
+        for (long dueDate : advanced) {
+            assertTrue(dueDate >= now);
+        }
+        List<Task> expected = dbHelper.getTasksAfter(now, null, false, 100);
+        List<Task> actual = cache.getTasksAfter(now, null, false, 100);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("позиция " + i, expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getDueDate(), actual.get(i).getDueDate());
+            assertEquals(expected.get(i).isCompleted(), actual.get(i).isCompleted());
+            assertEquals(expected.get(i).getRecurrence(), actual.get(i).getRecurrence());
+        }
+    }
+
+    @Test
+    public void deletingTaskDeletesItsOccurrences() {
+        Recurrence rule = new Recurrence(Recurrence.Frequency.DAILY, 1,
+                System.currentTimeMillis() + HOUR, 0, 0);
+        int id = (int) dbHelper.addTask(recurring("Зарядка", rule));
+        dbHelper.updateCompleted(new long[]{id}, true);
+        assertEquals(1, occurrenceRows());
+
+        dbHelper.deleteTask(id);
+
+        assertEquals(0, occurrenceRows());
+    }
+
+    private static Task recurring(String title, Recurrence rule) {
+        Task task = new Task(title, null, rule.getStart(), false);
+        task.setRecurrence(rule);
+        return task;
+    }
+
+    private long occurrenceRows() {
+        return DatabaseUtils.queryNumEntries(dbHelper.getReadableDatabase(), "task_occurrences");
+    }
+}
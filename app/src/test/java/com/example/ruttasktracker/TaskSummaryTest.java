@@ -0,0 +1,159 @@
+package com.example.ruttasktracker;
+
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// Счетчики task_counts после случайной последовательности записей сравниваются
+// с полным пересчетом по таблице tasks
+@RunWith(RobolectricTestRunner.class)
+public class TaskSummaryTest {
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private DatabaseHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void countersMatchFullRecomputeAfterRandomWrites() {
+        long now = System.currentTimeMillis();
+        Random random = new Random(11);
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            initial.add(new Task("Задача " + i, null, randomDueDate(random, now), random.nextInt(4) == 0));
+        }
+        dbHelper.addTasks(initial);
+        Recurrence rule = new Recurrence(Recurrence.Frequency.DAILY, 1, now - 3 * DAY, 0, 0);
+        Task recurring = new Task("Повтор", null, rule.getStart(), false);
+        recurring.setRecurrence(rule);
+        int recurringId = (int) dbHelper.addTask(recurring);
+
+        for (int step = 0; step < 500; step++) {
+            List<Task> tasks = dbHelper.getAllTasks();
+            Task task = tasks.get(random.nextInt(tasks.size()));
+            switch (random.nextInt(5)) {
+                case 0:
+                    dbHelper.addTask(new Task("Новая " + step, "Описание", randomDueDate(random, now), false));
+                    break;
+                case 1:
+                    task.setDueDate(randomDueDate(random, now));
+                    dbHelper.updateTask(task);
+                    break;
+                case 2:
+                    dbHelper.updateCompleted(new long[]{task.getId()}, !task.isCompleted());
+                    break;
+                case 3:
+                    if (task.getId() != recurringId) {
+                        dbHelper.deleteTask(task.getId());
+                    }
+                    break;
+                default:
+                    dbHelper.updateCompleted(new long[]{recurringId}, true);
+                    break;
+            }
+        }
+        assertCountersMatch(now);
+
+        dbHelper.completeOverdueTasks(now);
+        assertCountersMatch(now);
+
+        dbHelper.archiveTasks(now - 5 * DAY, 300, now);
+        assertCountersMatch(now);
+    }
+
+    @Test
+    public void summaryIsExactAtIntervalEdges() {
+        long now = (System.currentTimeMillis() / DatabaseHelper.COUNT_BUCKET_MS) * DatabaseHelper.COUNT_BUCKET_MS
+                + 7 * MINUTE;
+        List<Task> tasks = new ArrayList<>();
+        // Сроки по минуте вокруг now и вокруг границ интервалов
+        for (int i = -40; i <= 40; i++) {
+            tasks.add(new Task("Задача " + i, null, now + i * MINUTE, false));
+        }
+        dbHelper.addTasks(tasks);
+
+        assertSummary(now, now + 20 * MINUTE, now + 33 * MINUTE);
+        assertSummary(now, now + 8 * MINUTE, now + 40 * MINUTE);
+        assertSummary(now + 1, now, now + 1);
+    }
+
+    private void assertCountersMatch(long now) {
+        List<Task> tasks = dbHelper.getAllTasks();
+        Map<Long, long[]> expected = new TreeMap<>();
+        for (Task task : tasks) {
+            long[] counts = expected.computeIfAbsent(task.getDueDate() / DatabaseHelper.COUNT_BUCKET_MS,
+                    bucket -> new long[2]);
+            counts[task.isCompleted() ? 1 : 0]++;
+        }
+        Map<Long, long[]> actual = new TreeMap<>();
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT bucket, active, completed FROM task_counts", null);
+        try {
+            while (cursor.moveToNext()) {
+                actual.put(cursor.getLong(0), new long[]{cursor.getLong(1), cursor.getLong(2)});
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Long, long[]> entry : expected.entrySet()) {
+            assertArrayEquals("интервал " + entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+
+        assertSummary(now, TaskSummary.endOfDay(now), TaskSummary.endOfWeek(now));
+    }
+
+    private void assertSummary(long now, long todayEnd, long weekEnd) {
+        long active = 0, overdue = 0, completed = 0, dueToday = 0, dueThisWeek = 0;
+        for (Task task : dbHelper.getAllTasks()) {
+            if (task.isCompleted()) {
+                completed++;
+            } else if (task.getDueDate() < now) {
+                overdue++;
+            } else {
+                active++;
+                if (task.getDueDate() < todayEnd) {
+                    dueToday++;
+                }
+                if (task.getDueDate() < weekEnd) {
+                    dueThisWeek++;
+                }
+            }
+        }
+        TaskSummary summary = dbHelper.getSummary(now, todayEnd, weekEnd);
+        assertEquals(active, summary.active);
+        assertEquals(overdue, summary.overdue);
+        assertEquals(completed, summary.completed);
+        assertEquals(dueToday, summary.dueToday);
+        assertEquals(dueThisWeek, summary.dueThisWeek);
+    }
+
+    // Сроки разбросаны на две недели в обе стороны, с точностью до минуты
+    private static long randomDueDate(Random random, long now) {
+        return now + (random.nextInt(40_320) - 20_160) * MINUTE + random.nextInt(60_000);
+    }
+}
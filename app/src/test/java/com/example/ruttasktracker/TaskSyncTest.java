@@ -0,0 +1,195 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Два устройства со своими базами синхронизируются через сервер в памяти
+@RunWith(RobolectricTestRunner.class)
+public class TaskSyncTest {
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+
+    private DatabaseHelper deviceA;
+    private DatabaseHelper deviceB;
+    private FakeSyncRemote remote;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        deviceA = new DatabaseHelper(context, "device_a.db");
+        deviceB = new DatabaseHelper(context, "device_b.db");
+        remote = new FakeSyncRemote();
+    }
+
+    @After
+    public void tearDown() {
+        deviceA.close();
+        deviceB.close();
+    }
+
+    @Test
+    public void firstSyncSendsExistingTasksThenOnlyChanges() throws SQLException {
+        int count = TaskSync.BATCH_SIZE * 2 + 17;
+        deviceA.addTasks(createTasks(count));
+
+        TaskSync.Result first = TaskSync.sync(deviceA, remote);
+        assertEquals(count, first.pushed);
+        assertEquals(3, remote.pushCalls);
+        assertEquals(count, remote.size());
+        // Свои же строки с сервера ничего не меняют
+        assertEquals(0, first.pulled);
+
+        Task task = deviceA.getAllTasks().get(5);
+        task.setTitle("Изменено");
+        deviceA.updateTask(task);
+        int pushedBefore = remote.pushedRows;
+        int pulledBefore = remote.pulledRows;
+        TaskSync.Result second = TaskSync.sync(deviceA, remote);
+
+        assertEquals(1, second.pushed);
+        assertEquals(1, remote.pushedRows - pushedBefore);
+        assertEquals(1, remote.pulledRows - pulledBefore);
+    }
+
+    @Test
+    public void editsOfDifferentFieldsOnTwoDevicesAreMerged() throws SQLException {
+        deviceA.addTask(new Task("Задача", "Описание", System.currentTimeMillis() + DAY, false));
+        TaskSync.sync(deviceA, remote);
+        assertEquals(1, TaskSync.sync(deviceB, remote).pulled);
+
+        Task onA = deviceA.getAllTasks().get(0);
+        onA.setTitle("Новое название");
+        deviceA.updateTask(onA);
+        Task onB = deviceB.getAllTasks().get(0);
+        deviceB.updateCompleted(new long[]{onB.getId()}, true);
+
+        TaskSync.sync(deviceA, remote);
+        TaskSync.sync(deviceB, remote);
+        TaskSync.sync(deviceA, remote);
+
+        for (DatabaseHelper device : new DatabaseHelper[]{deviceA, deviceB}) {
+            Task task = device.getAllTasks().get(0);
+            assertEquals("Новое название", task.getTitle());
+            assertTrue(task.isCompleted());
+        }
+    }
+
+    @Test
+    public void laterEditOfSameFieldWins() throws Exception {
+        deviceA.addTask(new Task("Задача", "Описание", System.currentTimeMillis() + DAY, false));
+        TaskSync.sync(deviceA, remote);
+        TaskSync.sync(deviceB, remote);
+
+        Task onA = deviceA.getAllTasks().get(0);
+        onA.setTitle("С устройства A");
+        deviceA.updateTask(onA);
+        // Время изменений пишется с точностью до миллисекунды
+        Thread.sleep(10);
+        Task onB = deviceB.getAllTasks().get(0);
+        onB.setTitle("С устройства B");
+        deviceB.updateTask(onB);
+
+        // Более поздняя правка B приходит на сервер первой, правка A ее не перезаписывает
+        TaskSync.sync(deviceB, remote);
+        TaskSync.sync(deviceA, remote);
+        TaskSync.sync(deviceB, remote);
+
+        assertEquals("С устройства B", deviceA.getAllTasks().get(0).getTitle());
+        assertEquals("С устройства B", deviceB.getAllTasks().get(0).getTitle());
+    }
+
+    @Test
+    public void deletionPropagatesAndPulledChangesAreNotSentBack() throws SQLException {
+        deviceA.addTasks(createTasks(3));
+        TaskSync.sync(deviceA, remote);
+        TaskSync.sync(deviceB, remote);
+        assertEquals(0, deviceB.readPendingChanges(TaskSync.BATCH_SIZE, new ArrayList<>()));
+
+        deviceA.deleteTask(deviceA.getAllTasks().get(0).getId());
+        TaskSync.sync(deviceA, remote);
+        assertEquals(1, TaskSync.sync(deviceB, remote).pulled);
+
+        assertEquals(2, deviceB.getAllTasks().size());
+        assertEquals(0, deviceB.readPendingChanges(TaskSync.BATCH_SIZE, new ArrayList<>()));
+    }
+
+    @Test
+    public void archivedTasksAreNotDeletedOnServer() throws SQLException {
+        long now = System.currentTimeMillis();
+        deviceA.addTask(new Task("Старая", null, now - 40 * DAY, true));
+        TaskSync.sync(deviceA, remote);
+
+        deviceA.archiveTasks(now - 30 * DAY, 10, now);
+        TaskSync.Result result = TaskSync.sync(deviceA, remote);
+
+        assertEquals(0, result.pushed);
+        assertEquals(1, remote.size());
+        assertFalse(remote.get(firstSyncId()).deleted);
+    }
+
+    @Test
+    public void remoteEditOfArchivedTaskDoesNotRestoreIt() throws SQLException {
+        long now = System.currentTimeMillis();
+        deviceA.addTask(new Task("Старая", null, now - 40 * DAY, true));
+        TaskSync.sync(deviceA, remote);
+        TaskSync.sync(deviceB, remote);
+        deviceA.archiveTasks(now - 30 * DAY, 10, now);
+
+        Task onB = deviceB.getAllTasks().get(0);
+        onB.setTitle("Изменено на B");
+        deviceB.updateTask(onB);
+        TaskSync.sync(deviceB, remote);
+
+        assertEquals(0, TaskSync.sync(deviceA, remote).pulled);
+        assertTrue(deviceA.getAllTasks().isEmpty());
+        assertEquals(1, deviceA.getArchivedTasksAfter(null, false, 10).size());
+    }
+
+    @Test
+    public void invalidatedCacheSeesPulledChanges() throws SQLException {
+        deviceA.addTasks(createTasks(3));
+        TaskSync.sync(deviceA, remote);
+        TaskCache cache = new TaskCache(deviceB);
+        assertEquals(0, cache.size());
+
+        // Так пачки применяет TaskRepository в потоке записи
+        TaskSync.Result result = TaskSync.sync(deviceB, remote, (changes, watermark) -> {
+            int applied = deviceB.applyRemoteChanges(changes, watermark);
+            cache.invalidate();
+            return applied;
+        });
+
+        assertEquals(3, result.pulled);
+        assertFalse(cache.isLoaded());
+        assertEquals(3, cache.size());
+    }
+
+    private String firstSyncId() {
+        List<TaskChange> rows = remote.pull(0, 1);
+        return rows.get(0).syncId;
+    }
+
+    private static List<Task> createTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task("Задача " + i, "Описание " + i, now + (i + 1) * MINUTE, false));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.ruttasktracker;
+
+import android.content.Context;
+import android.widget.TextView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskTextCacheTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+    }
+
+    @Test
+    public void changedTaskIsPrecomputedAgain() {
+        TaskTextCache cache = createCache(TaskTextCache.DEFAULT_MAX_CHARS);
+        Task task = task(1, "Описание");
+        cache.prefetch(task, false);
+        assertNotNull(cache.get(task, false));
+
+        // Зачеркивание и новый текст - другая версия записи
+        assertNull(cache.get(task, true));
+        Task edited = new Task(task);
+        edited.setDescription("Новое описание");
+        assertNull(cache.get(edited, false));
+
+        cache.prefetch(edited, false);
+        assertNotNull(cache.get(edited, false));
+        assertNull(cache.get(task, false));
+    }
+
+    @Test
+    public void cacheIsBoundedByTextLength() {
+        String description = longDescription();
+        // Помещается не больше трех таких задач
+        TaskTextCache cache = createCache(description.length() * 3 + 1000);
+        for (int id = 1; id <= 10; id++) {
+            cache.prefetch(task(id, description), false);
+        }
+
+        for (int id = 1; id <= 7; id++) {
+            assertNull("задача " + id, cache.get(task(id, description), false));
+        }
+        for (int id = 8; id <= 10; id++) {
+            assertNotNull("задача " + id, cache.get(task(id, description), false));
+        }
+    }
+
+    @Test
+    public void recentlyUsedEntryIsEvictedLast() {
+        String description = longDescription();
+        TaskTextCache cache = createCache(description.length() * 3 + 1000);
+        for (int id = 1; id <= 3; id++) {
+            cache.prefetch(task(id, description), false);
+        }
+        // Привязка строки 1 делает ее самой свежей, первой вытесняется строка 2
+        assertNotNull(cache.get(task(1, description), false));
+        cache.prefetch(task(4, description), false);
+
+        assertNotNull(cache.get(task(1, description), false));
+        assertNull(cache.get(task(2, description), false));
+        assertNotNull(cache.get(task(3, description), false));
+        assertNotNull(cache.get(task(4, description), false));
+    }
+
+    private static String longDescription() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            description.append("Длинное описание. ");
+        }
+        return description.toString();
+    }
+
+    private TaskTextCache createCache(int maxChars) {
+        TaskTextCache cache = new TaskTextCache(Runnable::run, maxChars);
+        cache.setParams(new TextView(context), new TextView(context), new TextView(context));
+        return cache;
+    }
+
+    private static Task task(int id, String description) {
+        Task task = new Task("Задача " + id, description, 0, false);
+        task.setId(id);
+        return task;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.ruttasktracker;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskWriteBufferTest {
+    private static final long MINUTE = 60_000L;
+    // Достаточно долго, чтобы пачка не записалась сама посреди теста
+    private static final long LONG_DEBOUNCE_MS = TimeUnit.HOURS.toMillis(1);
+
+    private DatabaseHelper dbHelper;
+    private TaskCache cache;
+    private ScheduledExecutorService executor;
+    private final List<long[]> flushedBatches = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        dbHelper = new DatabaseHelper(ApplicationProvider.getApplicationContext());
+        cache = new TaskCache(dbHelper);
+        executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        dbHelper.close();
+    }
+
+    @Test
+    public void repeatedTogglesCoalesceIntoOneTransaction() throws Exception {
+        int[] ids = addTasks(3);
+        TaskWriteBuffer buffer = createBuffer(LONG_DEBOUNCE_MS);
+
+        // Первая задача переключается 5 раз и остается выполненной, вторая возвращается
+        // в исходное состояние, третья не трогается
+        for (int i = 0; i < 5; i++) {
+            buffer.setCompleted(ids[0], i % 2 == 0);
+        }
+        buffer.setCompleted(ids[1], true);
+        buffer.setCompleted(ids[1], false);
+        assertEquals(2, buffer.pendingCount());
+
+        // Список уже видит новое значение, база - еще нет
+        assertTrue(findInCache(ids[0]).isCompleted());
+        assertFalse(findInDatabase(ids[0]).isCompleted());
+
+        Metrics.reset();
+        buffer.flush().get();
+
+        assertEquals(0, buffer.pendingCount());
+        assertEquals(1, flushedBatches.size());
+        assertEquals(2, flushedBatches.get(0).length);
+        assertTrue(dumpLine("db.updateCompleted").startsWith("db.updateCompleted 1 2 "));
+        assertTrue(findInDatabase(ids[0]).isCompleted());
+        assertFalse(findInDatabase(ids[1]).isCompleted());
+        assertFalse(findInDatabase(ids[2]).isCompleted());
+    }
+
+    @Test
+    public void pendingTogglesAreWrittenAfterDebounce() throws Exception {
+        int[] ids = addTasks(2);
+        TaskWriteBuffer buffer = createBuffer(50);
+
+        buffer.setCompleted(ids[0], true);
+        buffer.setCompleted(ids[1], true);
+        // Задачи на одном потоке выполняются по времени запуска: эта - после пачки
+        executor.schedule(() -> null, 200, TimeUnit.MILLISECONDS).get();
+
+        assertEquals(1, flushedBatches.size());
+        assertTrue(findInDatabase(ids[0]).isCompleted());
+        assertTrue(findInDatabase(ids[1]).isCompleted());
+    }
+
+    @Test
+    public void crashBeforeFlushLosesOnlyUnwrittenBatch() throws Exception {
+        int[] ids = addTasks(4);
+        TaskWriteBuffer buffer = createBuffer(LONG_DEBOUNCE_MS);
+
+        buffer.setCompleted(ids[0], true);
+        buffer.setCompleted(ids[1], true);
+        buffer.flush().get();
+        buffer.setCompleted(ids[2], true);
+        buffer.setCompleted(ids[3], true);
+        // Процесс завершается до следующей пачки: отложенная запись не выполняется
+        executor.shutdownNow();
+
+        // После перезапуска кэш читается из базы: первая пачка на месте, вторая целиком потеряна
+        TaskCache restarted = new TaskCache(dbHelper);
+        List<Task> tasks = restarted.getTasksAfter(System.currentTimeMillis(), null, false, 10);
+        assertEquals(4, tasks.size());
+        for (Task task : tasks) {
+            boolean written = task.getId() == ids[0] || task.getId() == ids[1];
+            assertEquals(written, task.isCompleted());
+        }
+    }
+
+    @Test
+    public void togglesOfDeletedTasksAreIgnored() throws Exception {
+        int[] ids = addTasks(2);
+        TaskWriteBuffer buffer = createBuffer(LONG_DEBOUNCE_MS);
+
+        buffer.setCompleted(ids[0], true);
+        buffer.setCompleted(ids[1], true);
+        cache.deleteTask(ids[0]);
+        buffer.flush().get();
+
+        assertEquals(1, dbHelper.getAllTasks().size());
+        assertTrue(findInDatabase(ids[1]).isCompleted());
+    }
+
+    private TaskWriteBuffer createBuffer(long debounceMs) {
+        return new TaskWriteBuffer(cache, executor, debounceMs, (ids, values) -> flushedBatches.add(ids));
+    }
+
+    private int[] addTasks(int count) {
+        long now = System.currentTimeMillis();
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = (int) cache.addTask(new Task("Задача " + i, "Описание", now + (i + 1) * MINUTE, false));
+        }
+        return ids;
+    }
+
+    private Task findInCache(int taskId) {
+        for (Task task : cache.getTasksAfter(System.currentTimeMillis(), null, false, 100)) {
+            if (task.getId() == taskId) {
+                return task;
+            }
+        }
+        throw new AssertionError("задача " + taskId + " не найдена в кэше");
+    }
+
+    private Task findInDatabase(int taskId) {
+        for (Task task : dbHelper.getAllTasks()) {
+            if (task.getId() == taskId) {
+                return task;
+            }
+        }
+        throw new AssertionError("задача " + taskId + " не найдена в базе");
+    }
+
+    private static String dumpLine(String operation) {
+        StringWriter output = new StringWriter();
+        Metrics.dump(new PrintWriter(output));
+        for (String line : output.toString().split("\n")) {
+            if (line.startsWith(operation + " ")) {
+                return line;
+            }
+        }
+        return "";
+    }
+}